@@ -47,11 +47,10 @@ public class BackendServlet extends HttpServlet {
 				 */
 				
 				
-				System.out.println(entity);
+				RequestLog.log(RequestLog.truncate(String.valueOf(entity)));
 				datastore.put(entity);
 			}//end if entity does not equal null.
 		}//Loop through entities list.
-		
 	}//end doGet
 	
 	/**
@@ -116,7 +115,7 @@ public class BackendServlet extends HttpServlet {
 		}//end try
 		catch (Exception e) {
 			//An error occurred. Return a null Entity.
-			System.err.println("Exception while parsing FRED statistic (" + data_url + "). Exception: " + e.getMessage());
+			RequestLog.error("Exception while parsing FRED statistic (" + data_url + "). Exception: " + e.getMessage());
 			return null;
 		}//end catch
 		
@@ -0,0 +1,26 @@
+package com.jsontest.server;
+
+/**
+ * A JSONTest.com service whose response depends on nothing but a part
+ * of the request, such as md5, which depends only on ?text=. The
+ * servlet keeps the serialized responses of these services in the
+ * ResponseCache, so that repeated requests are answered without
+ * running the service again.
+ *
+ * @author Vinny
+ *
+ */
+public interface CacheableService extends JSONTestService {
+	
+	/**
+	 * The part of a request that the service's response depends on,
+	 * for instance the ?text= parameter. Two requests with the same
+	 * cache input (and callback) get the same response.
+	 *
+	 * @param request The request being handled.
+	 * @return The cache input, or null if the response to this
+	 * request should not be cached.
+	 */
+	String cacheInput(ServiceRequest request);
+	
+}//end file
@@ -0,0 +1,33 @@
+package com.jsontest.server;
+
+import org.json.JSONException;
+
+/**
+ * A single JSONTest.com service, such as ip or md5. Services are 
+ * registered with a ServiceRegistry when the servlet starts, under 
+ * their name and any aliases.
+ * 
+ * @author Vinny
+ *
+ */
+public interface JSONTestService {
+	
+	/**
+	 * The name of the service, in lowercase. Requests made through 
+	 * an alias (for instance "time" for "date") are still reported 
+	 * under this name.
+	 * 
+	 * @return The name of the service.
+	 */
+	String getName();
+	
+	/**
+	 * Handles a request. The service places its response into the 
+	 * request's JSONObject, or sets the JSON text directly.
+	 * 
+	 * @param request The request being handled.
+	 * @throws JSONException If the response cannot be built.
+	 */
+	void handle(ServiceRequest request) throws JSONException;
+	
+}//end file
@@ -0,0 +1,400 @@
+package com.jsontest.server;
+
+import java.util.Date;
+import java.util.Enumeration;
+
+import javax.servlet.http.*;
+
+import org.json.*;
+
+/**
+ * The JSONTest.com services. Each service is a small class of its own, 
+ * registered by name in createRegistry().
+ * 
+ * @author Vinny
+ *
+ */
+public class JSONTestServices {
+	
+	/**
+	 * Builds a registry holding every JSONTest.com service.
+	 * 
+	 * @return The registry.
+	 */
+	public static ServiceRegistry createRegistry() {
+		ServiceRegistry registry = new ServiceRegistry(new NoService());
+		registry.register(new IPService());
+		registry.register(new DateService(), "time");
+		registry.register(new HeadersService(), "header");
+		registry.register(new EchoService());
+		registry.register(new ValidateService());
+		registry.register(new CookieService());
+		registry.register(new MD5Service());
+		registry.register(new SHA1Service());
+		registry.register(new NotFoundService());
+		registry.register(new MalformedService());
+		registry.register(new CodeService());
+		registry.register(new MetricsService());
+		return registry;
+	}//end createRegistry
+	
+	/**
+	 * Returns the client's IP address.
+	 */
+	static class IPService implements JSONTestService {
+		public String getName() {
+			return "ip";
+		}
+		
+		public void handle(ServiceRequest request) throws JSONException {
+			request.json.put("ip", request.req.getRemoteAddr());
+		}
+	}//end IPService
+	
+	/**
+	 * Returns the current date and time.
+	 */
+	static class DateService implements JSONTestService {
+		public String getName() {
+			return "date";
+		}
+		
+		public void handle(ServiceRequest request) throws JSONException {
+			Date current_date = new Date();
+			String date = new java.text.SimpleDateFormat("MM-dd-yyyy").format(current_date);
+			String time = new java.text.SimpleDateFormat("hh:mm:ss aa").format(current_date);
+			
+			request.json.put("date", date);
+			request.json.put("time", time);
+			request.json.put("milliseconds_since_epoch", current_date.getTime());
+		}
+	}//end DateService
+	
+	/**
+	 * Returns the HTTP request headers we received.
+	 */
+	static class HeadersService implements JSONTestService {
+		public String getName() {
+			return "headers";
+		}
+		
+		public void handle(ServiceRequest request) throws JSONException {
+			Enumeration<String> headers = request.req.getHeaderNames();
+			
+			//Loop through all headers, add those headers to the 
+			//json object.
+			while (headers.hasMoreElements()) {
+				String header_name = headers.nextElement();
+				String header_name_lowercase = header_name.toLowerCase();
+				
+				/**
+				 * We host on Google App Engine, which adds several 
+				 * request headers to every request. We don't want 
+				 * to return those headers because they're not 
+				 * from the client. We'll skip those headers by 
+				 * using continue statements, which skip this 
+				 * iteration of the loop.
+				 */
+				if (header_name_lowercase.startsWith("x-zoo")) {
+					continue;
+				}
+				else if (header_name_lowercase.startsWith("x-google")) {
+					continue;
+				}
+				else if (header_name_lowercase.startsWith("x-appengine")) {
+					continue;
+				}
+				
+				//Place the header into the json object.
+				request.json.put(header_name, request.req.getHeader(header_name));
+				//@ TODO Handle multiple header values with same name.
+			}//end while loop going through headers.
+		}
+	}//end HeadersService
+	
+	/**
+	 * Echoes JSON that we build from the request URI.
+	 */
+	static class EchoService implements CacheableService {
+		public String getName() {
+			return "echo";
+		}
+		
+		public String cacheInput(ServiceRequest request) {
+			//The response is built from the request URI alone.
+			return request.req.getRequestURI();
+		}
+		
+		public void handle(ServiceRequest request) throws JSONException {
+			//Retrieve the part of the url after jsontest.com.
+			//i.e. if the url was jsontest.com/key/value, this 
+			//will pull out /key/value.
+			String request_uri = request.req.getRequestURI().substring(1);
+			String[] components = request_uri.split("/");
+			
+			//Loop through each key/value pair, two at a time. If 
+			//there are an odd number of tokens in the request url 
+			//(a key is specified, but no value), the last key gets 
+			//a blank String for its value.
+			for (int i = 0; i < components.length; i += 2) {
+				String key = components[i];
+				String value = i + 1 < components.length ? components[i + 1] : "";
+				
+				//Put the key:value component into the JSON object.
+				request.json.put(key, value);
+			}//end loop through key/value components in the request URI.
+		}
+	}//end EchoService
+	
+	/**
+	 * Validates JSON passed through the ?json= parameter. A response 
+	 * answered from the ResponseCache is the one made for the first 
+	 * request with the same JSON, so its parse_time_nanoseconds and 
+	 * streaming_parse_time_nanoseconds are the timings of that first 
+	 * parse.
+	 */
+	static class ValidateService implements CacheableService {
+		public String getName() {
+			return "validate";
+		}
+		
+		public String cacheInput(ServiceRequest request) {
+			return request.req.getParameter("json");
+		}
+		
+		public void handle(ServiceRequest request) throws JSONException {
+			JSONObject json = request.json;
+			String incoming_json = request.req.getParameter("json");
+			
+			if (incoming_json == null) {
+				json.put("error", "You must pass JSON via the ?json= parameter to validate.");
+				return;
+			}
+			
+			//Validate the JSON
+			JSONValidator validator = new JSONValidator(incoming_json);
+			
+			/**
+			 * If validation succeeds, note that. If it failed, note 
+			 * the error message.
+			 */
+			json.put("validate", validator.validate);
+			
+			/**
+			 * Whether the incoming JSON was parsed as an object 
+			 * or an array.
+			 */
+			json.put("object_or_array", validator.object_or_array);
+			
+			if (validator.validate) {
+				//The validation was successful.
+				json.put("size", validator.size);
+				json.put("empty", validator.empty);
+				
+				//The timings of this parse, which cached responses 
+				//repeat.
+				json.put("streaming_parse_time_nanoseconds", validator.streaming_parse_time_nanoseconds);
+				
+				//The full parse is skipped for very large JSON text.
+				if (validator.parse_time_nanoseconds >= 0) {
+					json.put("parse_time_nanoseconds", validator.parse_time_nanoseconds);
+				}
+			}
+			else {
+				//Validation failed.
+				json.put("error", validator.error);
+				json.put("error_info", validator.error_info);
+			}
+		}
+	}//end ValidateService
+	
+	/**
+	 * Sets a cookie.
+	 */
+	static class CookieService implements JSONTestService {
+		public String getName() {
+			return "cookie";
+		}
+		
+		public void handle(ServiceRequest request) throws JSONException {
+			//This sets the cookie.
+			Long ms_since_epoch = (new Date()).getTime();
+			javax.servlet.http.Cookie cookie = new javax.servlet.http.Cookie("jsontestdotcom", "ms:" + ms_since_epoch.toString());
+			cookie.setMaxAge(60 * 60 * 24 * 7);
+			request.resp.addCookie(cookie);
+			
+			//Tell the user.
+			request.json.put("cookie_status", "Cookie set with name jsontestdotcom");
+		}
+	}//end CookieService
+	
+	/**
+	 * Calculates the MD5 hash of the ?text= parameter.
+	 */
+	static class MD5Service implements CacheableService {
+		public String getName() {
+			return "md5";
+		}
+		
+		public String cacheInput(ServiceRequest request) {
+			return request.req.getParameter("text");
+		}
+		
+		public void handle(ServiceRequest request) throws JSONException {
+			String to_be_md5 = request.req.getParameter("text");
+			
+			//Put the original String that was passed to us in the JSON.
+			request.json.put("original", to_be_md5);
+			
+			//Try to MD5 the passed String.
+			try {
+				request.json.put("md5", JSONUtilities.generateMD5(to_be_md5));
+			}
+			catch (RuntimeException e) {
+				//A RuntimeException was encountered. The provided String 
+				//had an error.
+				request.json.put("error", "An error was encountered during MD5 hashing. Message: " + e.getMessage());
+				request.json.put("info", "You must pass a String through the ?text= parameter for a hash to be calculated.");
+				
+				//Make a note in logging.
+				if (request.logged) {
+					RequestLog.log("Unable to MD5: " + RequestLog.truncate(to_be_md5) + " Message: " + e.getMessage());
+				}
+			}//end catch clause if RuntimeException occurs.
+		}
+	}//end MD5Service
+	
+	/**
+	 * Calculates the SHA1 hash of the ?text= parameter.
+	 */
+	static class SHA1Service implements CacheableService {
+		public String getName() {
+			return "sha1";
+		}
+		
+		public String cacheInput(ServiceRequest request) {
+			return request.req.getParameter("text");
+		}
+		
+		public void handle(ServiceRequest request) throws JSONException {
+			String to_be_sha1 = request.req.getParameter("text");
+			
+			//Put the original String that was passed to us in the JSON.
+			request.json.put("original", to_be_sha1);
+			
+			//Try to SHA1 the passed String.
+			try {
+				request.json.put("sha1", JSONUtilities.generateSHA1(to_be_sha1));
+			}
+			catch (RuntimeException e) {
+				//A RuntimeException was encountered. The provided String 
+				//had an error.
+				request.json.put("error", "An error was encountered during SHA1 hashing. Message: " + e.getMessage());
+				request.json.put("info", "You must pass a String through the ?text= parameter for a hash to be calculated.");
+				
+				//Make a note in logging.
+				if (request.logged) {
+					RequestLog.log("Unable to SHA1: " + RequestLog.truncate(to_be_sha1) + " Message: " + e.getMessage());
+				}
+			}//end catch clause if RuntimeException occurs.
+		}
+	}//end SHA1Service
+	
+	/**
+	 * Returns a 404 error code, and nothing else.
+	 */
+	static class NotFoundService implements JSONTestService {
+		public String getName() {
+			return "404";
+		}
+		
+		public void handle(ServiceRequest request) {
+			request.resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+			request.finished = true;
+		}
+	}//end NotFoundService
+	
+	/**
+	 * Returns malformed JSON text.
+	 */
+	static class MalformedService implements JSONTestService {
+		public String getName() {
+			return "malformed";
+		}
+		
+		public void handle(ServiceRequest request) throws JSONException {
+			//Generate the JSON object.
+			JSONObject malformed_json = new JSONObject();
+			malformed_json.put("ip", request.req.getRemoteAddr());
+			
+			//Pull out the text, and delete the last } character, 
+			//making it invalid JSON.
+			String malformed_json_text = malformed_json.toString(3);
+			malformed_json_text = malformed_json_text.trim();
+			malformed_json_text = malformed_json_text.substring(0, malformed_json_text.length() - 1);
+			
+			//Set the response directly into the response text.
+			request.json_text = malformed_json_text;
+		}
+	}//end MalformedService
+	
+	/**
+	 * Returns JavaScript code that alerts the client's IP address.
+	 */
+	static class CodeService implements JSONTestService {
+		public String getName() {
+			return "code";
+		}
+		
+		public void handle(ServiceRequest request) {
+			request.json_text = "alert(\"Your IP address is: " + request.req.getRemoteAddr() + "\");";
+			
+			//Cancel any callback set, because it makes no sense 
+			//to wrap JS code in a callback.
+			request.callback = null;
+		}
+	}//end CodeService
+	
+	/**
+	 * Returns the metrics of every service: request and error counts, 
+	 * response sizes and latency percentiles, along with the response 
+	 * cache's hit rate and size. With ?format=prometheus 
+	 * they are returned in the Prometheus text format instead of JSON.
+	 */
+	static class MetricsService implements JSONTestService {
+		public String getName() {
+			return "metrics";
+		}
+		
+		public void handle(ServiceRequest request) throws JSONException {
+			if ("prometheus".equals(request.req.getParameter("format"))) {
+				request.json_text = ServiceMetrics.allToPrometheus() + ResponseCache.toPrometheus();
+				request.content_type = "text/plain; version=0.0.4";
+				
+				//Prometheus text can't be wrapped in a callback.
+				request.callback = null;
+			}
+			else {
+				request.json.put("services", ServiceMetrics.allToJSON());
+				request.json.put("response_cache", ResponseCache.toJSON());
+			}
+		}
+	}//end MetricsService
+	
+	/**
+	 * Answers requests that did not name a JSONTest.com service.
+	 */
+	static class NoService implements JSONTestService {
+		public String getName() {
+			return "none";
+		}
+		
+		public void handle(ServiceRequest request) throws JSONException {
+			request.json.put("error", "A valid JSONTest.com service was not specified.");
+			request.json.put("info", "Visit JSONTest.com for available services.");
+			request.json.put("url", "jsontest.com");
+			request.json.put("version", "Production");
+		}
+	}//end NoService
+	
+}//end file
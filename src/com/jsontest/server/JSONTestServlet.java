@@ -1,9 +1,9 @@
 package com.jsontest.server;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Date;
-import java.util.Enumeration;
-
+import java.io.OutputStream;
+import javax.servlet.ServletException;
 import javax.servlet.http.*;
 
 import org.json.*;
@@ -17,6 +17,54 @@ import org.json.*;
  */
 public class JSONTestServlet extends HttpServlet {
 	
+	/**
+	 * The bytes that end a JSON response, and a JSONP response.
+	 */
+	private static final byte[] LINE_END = { '\n' };
+	private static final byte[] CALLBACK_END = { ')', ';', '\n' };
+	
+	/**
+	 * Every JSONTest.com service, by name. Built once in init().
+	 */
+	private ServiceRegistry services;
+	
+	/**
+	 * Builds the service registry when the servlet is loaded, and 
+	 * sets up logging from the servlet's init parameters:
+	 * log_sample_rate (the fraction of requests logged, 1 by default), 
+	 * log_sample_rates (rates for particular services, such as 
+	 * "validate=0.01,echo=0.1"), and log_body_limit (the most 
+	 * characters of a response body that are logged).
+	 * 
+	 * The response cache is set up from cache_size_bytes (the most 
+	 * bytes of responses cached, 0 to turn the cache off) and 
+	 * cache_ttl_seconds (how long a response stays cached).
+	 */
+	public void init() throws ServletException {
+		services = JSONTestServices.createRegistry();
+		try {
+			RequestLog.configure(getInitParameter("log_sample_rate"), 
+					getInitParameter("log_sample_rates"), getInitParameter("log_body_limit"));
+		}
+		catch (NumberFormatException e) {
+			throw new ServletException("Invalid logging parameter: " + e.getMessage());
+		}
+		try {
+			ResponseCache.configure(getInitParameter("cache_size_bytes"), getInitParameter("cache_ttl_seconds"));
+		}
+		catch (NumberFormatException e) {
+			throw new ServletException("Invalid cache parameter: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Writes out any log lines still waiting when the servlet is 
+	 * taken out of service, and stops the log's writer thread.
+	 */
+	public void destroy() {
+		RequestLog.shutdown();
+	}
+	
 	/**
 	 * All POST requests are piped to doGet; requests are treated identically 
 	 * regardless of whether they are POST or GET requests.
@@ -31,6 +79,7 @@ public class JSONTestServlet extends HttpServlet {
 	 */
 	public void doGet(HttpServletRequest req, HttpServletResponse resp)
 			throws IOException {
+		long start_time = System.nanoTime();
 		
 		/**
 		 * First, we must figure out what service the client is 
@@ -42,18 +91,31 @@ public class JSONTestServlet extends HttpServlet {
 		 * we'll pull out the subdomain.
 		 */
 		String service = req.getParameter("service");
+		String service_source = "Parameter";
 		if (service == null) {
 			//The service was not specified via the request 
 			//parameter. Pull out the service via the subdomain.
 			service = req.getRequestURL().toString();
 			service = service.substring(service.indexOf("/") + 2, service.indexOf("."));
-			System.out.println("Service From Subdomain: " + service);
+			service_source = "Subdomain";
 		}
-		else {
-			//The service was specified via the request parameter.
-			System.out.println("Service From Parameter: " + service);
+		
+		/**
+		 * Find the service in the registry, which maps every service 
+		 * name and alias to the service that handles it. Names that 
+		 * are not registered get the "no service" response.
+		 */
+		JSONTestService handler = services.lookup(service);
+		
+		/**
+		 * Decide once whether this request is logged, so that it is 
+		 * logged completely or not at all. Request threads never 
+		 * write the log to stdout themselves; see RequestLog.
+		 */
+		boolean logged = RequestLog.isSampled(handler.getName());
+		if (logged) {
+			RequestLog.log("Service From " + service_source + ": " + service);
 		}
-		service = service.toLowerCase();
 		
 		
 		/**
@@ -69,258 +131,88 @@ public class JSONTestServlet extends HttpServlet {
 		String allow_origin = req.getParameter("allow_origin");
 		
 		/**
-		 * The String json_text holds the JSON text that will be 
-		 * returned back to the client. JSONObject json represents 
-		 * an org.json.JSONObject that can be converted into a 
-		 * String and stored into json_text. The services below 
-		 * will mostly use the JSONObject to store their 
-		 * responses, but occasionally we'll need low-level 
-		 * access to the returned json_text, and so services 
-		 * will be allowed to store to json_text directly and 
-		 * ignore the JSONObject.
+		 * The service stores its response in the request, mostly in 
+		 * the request's JSONObject, but occasionally we'll need 
+		 * low-level access to the returned json_text, and so services 
+		 * are allowed to store to json_text directly and ignore the 
+		 * JSONObject.
 		 */
-		JSONObject json = new JSONObject();
+		ServiceRequest request = new ServiceRequest(req, resp, callback);
+		request.logged = logged;
+		
+		/**
+		 * Handle the request and write the response, then record the 
+		 * time it took and the size of the response in the service's 
+		 * metrics. A request that fails with an exception is counted 
+		 * as an error.
+		 */
+		long response_bytes = 0;
+		boolean completed = false;
+		try {
+			response_bytes = respond(request, handler, mime, allow_origin, logged);
+			completed = true;
+		}
+		finally {
+			ServiceMetrics.forService(handler.getName()).record(System.nanoTime() - start_time, 
+					response_bytes, request.error || !completed);
+		}
+	}//end doGet
+	
+	/**
+	 * Runs the service for a request and writes out its response.
+	 * 
+	 * @param request The request.
+	 * @param handler The service that handles the request.
+	 * @param mime The mime request parameter.
+	 * @param allow_origin The allow_origin request parameter.
+	 * @param logged Whether this request is being logged.
+	 * @return The number of bytes in the response body.
+	 */
+	private long respond(ServiceRequest request, JSONTestService handler, String mime, 
+			String allow_origin, boolean logged) throws IOException {
+		HttpServletResponse resp = request.resp;
+		String callback = request.callback;
 		String json_text = null;
 		
+		/**
+		 * Services whose response depends only on the request may 
+		 * have answered the same request before. If so, the cached 
+		 * response is written out without running the service.
+		 */
+		ResponseCache.Key cache_key = null;
+		ResponseCache.Entry cached = null;
+		if (handler instanceof CacheableService && ResponseCache.isEnabled()) {
+			String cache_input = ((CacheableService)handler).cacheInput(request);
+			if (cache_input != null) {
+				cache_key = new ResponseCache.Key(handler.getName(), cache_input, callback);
+				cached = ResponseCache.get(cache_key);
+			}
+		}
+		
 		/**
 		 * Start processing services.
 		 * We have to enclose in a try block because JSONObject.put()
 		 * is declared to be able to throw a JSONException.
 		 */
 		try {
-			if (service.equals("ip")) {
-				//Return the client's IP address.
-				json.put("ip", req.getRemoteAddr());
-			}
-			else if (service.equals("date") || service.equals("time")) {
-				//Return the current date and time.
-				Date current_date = new Date();
-				String date = new java.text.SimpleDateFormat("MM-dd-yyyy").format(current_date);
-				String time = new java.text.SimpleDateFormat("hh:mm:ss aa").format(current_date);
-				
-				json.put("date", date);
-				json.put("time", time);
-				json.put("milliseconds_since_epoch", current_date.getTime());
-				
-			}
-			else if (service.equals("header") || service.equals("headers")) {
-				//Return the HTTP request headers we received.
-				Enumeration<String> headers = req.getHeaderNames();
-				
-				//Loop through all headers, add those headers to the 
-				//json object.
-				while (headers.hasMoreElements()) {
-					String header_name = headers.nextElement();
-					String header_name_lowercase = header_name.toLowerCase();
-					
-					/**
-					 * We host on Google App Engine, which adds several 
-					 * request headers to every request. We don't want 
-					 * to return those headers because they're not 
-					 * from the client. We'll skip those headers by 
-					 * using continue statements, which skip this 
-					 * iteration of the loop.
-					 */
-					if (header_name_lowercase.startsWith("x-zoo")) {
-						continue;
-					}
-					else if (header_name_lowercase.startsWith("x-google")) {
-						continue;
-					}
-					else if (header_name_lowercase.startsWith("x-appengine")) {
-						continue;
-					}
-					
-					//Place the header into the json object.
-					json.put(header_name, req.getHeader(header_name));
-					//@ TODO Handle multiple header values with same name.
-				}//end while loop going through headers.
-			}//end else if service equals "header" or "headers"
-			else if (service.equals("echo")) {
-				//The user wants us to echo JSON that we 
-				//build from the request URI.
-				
-				//Retrieve the part of the url after jsontest.com.
-				//i.e. if the url was jsontest.com/key/value, this 
-				//will pull out /key/value.
-				String request_uri = req.getRequestURI().substring(1);
-				String[] components = request_uri.split("/");
-				
-				//Loop through each key/value pair.
-				for (int i = 0; i < components.length; i++) {
-					String key = components[i];
-					String value = "";
-					
-					//Try to retrieve the value component.
-					try {
-						value = components[i + 1];
-					}
-					catch (ArrayIndexOutOfBoundsException e) {
-						//If this exception is thrown, that means there are an odd number of tokens
-						//in the request url (in other terms, there is a key value specified, but no 
-						//value). It's OK, because we'll just put a blank String into the value component.
-					}
-					
-					//Put the key:value component into the JSON object.
-					json.put(key, value);
-					
-					//Increase the i variable, because we're looping through 
-					//two at a time.
-					i++;
-				}//end loop through key/value components in the request URI.
-			}//end else if service equals echo.
-			else if (service.equals("validate")) {
-				//The user wants to validate JSON.
-				String incoming_json = req.getParameter("json");
-				
-				if (incoming_json == null) {
-					json.put("error", "You must pass JSON via the ?json= parameter to validate.");
-				}
-				else {
-					//Validate the JSON
-					JSONValidator validator = new JSONValidator(incoming_json);
-					
-					/**
-					 * If validation succeeds, note that. If it failed, note 
-					 * the error message.
-					 */
-					json.put("validate", validator.validate);
-					
-					/**
-					 * Whether the incoming JSON was parsed as an object 
-					 * or an array.
-					 */
-					json.put("object_or_array", validator.object_or_array);
-					
-					if (validator.validate) {
-						//The validation was successful.
-						json.put("size", validator.size);
-						json.put("empty", validator.empty);
-						json.put("parse_time_nanoseconds", validator.parse_time_nanoseconds);
-					}
-					else {
-						//Validation failed.
-						json.put("error", validator.error);
-						json.put("error_info", validator.error_info);
-					}
-				}//end else (incoming json does not equal null)
-			}//end else if service equals "validate"
-			else if (service.equals("cookie")) {
-				//The user wants a cookie set.
-				
-				//This sets the cookie.
-				Long ms_since_epoch = (new Date()).getTime();
-				javax.servlet.http.Cookie cookie = new javax.servlet.http.Cookie("jsontestdotcom", "ms:" + ms_since_epoch.toString());
-				cookie.setMaxAge(60 * 60 * 24 * 7);
-				resp.addCookie(cookie);
-				
-				//Tell the user.
-				json.put("cookie_status", "Cookie set with name jsontestdotcom");
-			}//end else if service equals "cookie"
-			else if (service.equals("md5")) {
-				//The user wants us to MD5 a String.
-				
-				//The String that we calculate a md5 hash from is passed 
-				//through the text parameter.
-				String to_be_md5 = req.getParameter("text");
-				
-				//Put the original String that was passed to us in the JSON.
-				json.put("original", to_be_md5);
-				
-				//Try to MD5 the passed String.
-				try {
-					String md5 = JSONUtilities.generateMD5(to_be_md5);
-					json.put("md5", md5);
-				}
-				catch (RuntimeException e) {
-					//A RuntimeException was encountered. The provided String 
-					//had an error.
-					json.put("error", "An error was encountered during MD5 hashing. Message: " + e.getMessage());
-					json.put("info", "You must pass a String through the ?text= parameter for a hash to be calculated.");
-					
-					//Make a note in logging.
-					System.out.println("Unable to MD5: " + to_be_md5 + " Message: " + e.getMessage());
-				}//end catch clause if RuntimeException occurs.
-			}//end else if service equals "md5"
-			else if (service.equals("sha1")) {
-				//The String that we calculate the SHA1 hash from 
-				//is passed through the text parameter.
-				String to_be_sha1 = req.getParameter("text");
-				
-				//Put the original String that was passed to us in the JSON.
-				json.put("original", to_be_sha1);
-				
-				//Try to SHA1 the passed String.
-				try {
-					String sha1 = JSONUtilities.generateSHA1(to_be_sha1);
-					json.put("sha1", sha1);
-				}
-				catch (RuntimeException e) {
-					//A RuntimeException was encountered. The provided String 
-					//had an error.
-					json.put("error", "An error was encountered during SHA1 hashing. Message: " + e.getMessage());
-					json.put("info", "You must pass a String through the ?text= parameter for a hash to be calculated.");
-					
-					//Make a note in logging.
-					System.out.println("Unable to SHA1: " + to_be_sha1 + " Message: " + e.getMessage());
-				}//end catch clause if RuntimeException occurs.
-			}//end else if service equals "sha1"
-			else if (service.equals("404")) {
-				//Return a 404 error code.
-				resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
-				
-				//Return immediately; we don't need any further processing.
-				return;
-			}
-			else if (service.equals("malformed")) {
-				//The user wants malformed JSON text
-				
-				//Generate the JSON object.
-				JSONObject malformed_json = new JSONObject();
-				malformed_json.put("ip", req.getRemoteAddr());
-				
-				//Pull out the text, and delete the last } character, 
-				//making it invalid JSON.
-				String malformed_json_text = malformed_json.toString(3);
-				malformed_json_text = malformed_json_text.trim();
-				malformed_json_text = malformed_json_text.substring(0, malformed_json_text.length() - 1);
-				
-				//Set the response directly into the response text.
-				json_text = malformed_json_text;
-			}//end else if service equals "malformed"
-			else if (service.equals("code")) {
-				//The user wants JS code
-				String code = "alert(\"Your IP address is: " + req.getRemoteAddr() + "\");";
-				
-				//Send to user.
-				json_text = code;
-				
-				//Cancel any callback set, because it makes no sense 
-				//to wrap JS code in a callback.
-				callback = null;
-			}//end else if service equals "code"
-			else {
-				//No JSONTest service matched the client's requested 
-				//service. Send back an error.
-				json.put("error", "A valid JSONTest.com service was not specified.");
-				json.put("info", "Visit JSONTest.com for available services.");
-				json.put("url", "jsontest.com");
-				json.put("version", "Production");
+			if (cached == null) {
+				handler.handle(request);
 			}
-			//End processing services.
 			
-			/**
-			 * Generate JSON from the JSONObject, but only if the service 
-			 * did not specify the return text directly.
-			 */
-			if (json_text == null) {
-				json_text = json.toString(3);
-			}//end if json_text == null
+			//Some services (such as 404) finish the response 
+			//themselves; we don't need any further processing.
+			if (request.finished) {
+				return 0;
+			}
+			json_text = request.json_text;
+			callback = request.callback;
 			
 			/**
-			 * Wrap with callback, if a callback is specified.
+			 * Wrap with callback, if a callback is specified and the 
+			 * service specified the return text directly. JSON from the 
+			 * JSONObject is wrapped as it is written out, below.
 			 */
-			if (callback != null) {
+			if (callback != null && json_text != null) {
 				json_text = callback + "(" + json_text + ");";
 			}//end if callback !- null
 		}//end try clause around services
@@ -336,9 +228,10 @@ public class JSONTestServlet extends HttpServlet {
 			 */
 			json_text = "{\"error\":\"Unable to generate JSON. Please notify ";
 			json_text += "the webmaster.\"}";
+			request.error = true;
 			
 			//Note the error in logging.
-			System.err.println("Exception while processing services: " + e.getMessage());
+			RequestLog.error("Exception while processing services: " + e.getMessage());
 		}
 		
 		
@@ -351,7 +244,9 @@ public class JSONTestServlet extends HttpServlet {
 		if ("false".equals(allow_origin)) {
 			//Do nothing, the user does not want this header.
 			//Make a note in logging, since this is a very unusual request.
-			System.out.println("Access-Control-Allow-Origin header turned off. User's web application may not work.");
+			if (logged) {
+				RequestLog.log("Access-Control-Allow-Origin header turned off. User's web application may not work.");
+			}
 		}
 		else {
 			//By default, we set access-control-allow-origin to *, which 
@@ -360,15 +255,171 @@ public class JSONTestServlet extends HttpServlet {
 			resp.setHeader("Access-Control-Allow-Origin", "*");
 		}
 		
-		//Set the content type.
-		String content_type = getContentType(mime, callback);
+		//Set the content type. Services whose response isn't JSON 
+		//may have chosen their own.
+		String content_type = request.content_type;
+		if (content_type == null) {
+			content_type = getContentType(mime, callback);
+		}
 		resp.setContentType(content_type);
-		System.out.println("Content Type: " + content_type);
+		resp.setCharacterEncoding("UTF-8");
+		if (logged) {
+			RequestLog.log("Content Type: " + content_type);
+		}
 		
-		//Print out the JSON.
-		resp.getWriter().println(json_text);
-		System.out.println(json_text);
-	}//end doGet
+		/**
+		 * Print out the JSON. If the service used the JSONObject, 
+		 * the JSON is encoded straight into the response stream, 
+		 * without making a String of it first. A cacheable response 
+		 * is copied for the cache as it is written, unless it grows 
+		 * too large to be kept.
+		 */
+		if (cached != null) {
+			request.error = cached.error;
+			resp.getOutputStream().write(cached.body);
+			if (logged) {
+				RequestLog.log("Response from cache.");
+			}
+			return cached.body.length;
+		}
+		else if (json_text == null) {
+			request.error = request.json.has("error");
+			if (cache_key == null) {
+				return writeJSON(resp.getOutputStream(), request.json, callback);
+			}
+			CopyingOutputStream copy = new CopyingOutputStream(resp.getOutputStream(), 
+					ResponseCache.bodyLimit(cache_key));
+			long length = writeJSON(copy, request.json, callback);
+			if (copy.body != null) {
+				ResponseCache.put(cache_key, copy.body.toByteArray(), request.error);
+			}
+			return length;
+		}
+		else {
+			resp.getWriter().println(json_text);
+			if (logged) {
+				RequestLog.log(RequestLog.truncate(json_text));
+			}
+			return utf8Length(json_text) + 1;
+		}
+	}//end respond
+	
+	/**
+	 * Write a JSONObject to a stream as UTF-8 encoded JSON, indented 
+	 * by 3 spaces and followed by a newline.
+	 * 
+	 * @param stream The stream to write to.
+	 * @param json The JSONObject holding the service's response.
+	 * @param callback The callback request parameter. If it is not null, 
+	 * the JSON is wrapped in a call to it.
+	 * @return The number of bytes written.
+	 */
+	private long writeJSON(OutputStream stream, JSONObject json, 
+			String callback) throws IOException {
+		CountingOutputStream out = new CountingOutputStream(stream);
+		try {
+			if (callback != null) {
+				out.write((callback + "(").getBytes("UTF-8"));
+			}
+			json.write(out, 3);
+			out.write(callback != null ? CALLBACK_END : LINE_END);
+		}
+		catch (JSONException e) {
+			//As above, this should never pop.
+			RequestLog.error("Exception while writing JSON: " + e.getMessage());
+		}
+		return out.count;
+	}//end writeJSON
+	
+	/**
+	 * Counts the bytes written through to an OutputStream.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		private final OutputStream out;
+		long count;
+		
+		CountingOutputStream(OutputStream out) {
+			this.out = out;
+		}
+		
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+		
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+		
+		public void flush() throws IOException {
+			out.flush();
+		}
+	}//end CountingOutputStream
+	
+	/**
+	 * Writes through to an OutputStream, keeping a copy of the bytes 
+	 * for the response cache. The copy is dropped as soon as it would 
+	 * hold more than the limit.
+	 */
+	private static class CopyingOutputStream extends OutputStream {
+		private final OutputStream out;
+		private final long limit;
+		
+		/**
+		 * The bytes written so far, or null if there were too many.
+		 */
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		
+		CopyingOutputStream(OutputStream out, long limit) {
+			this.out = out;
+			this.limit = limit;
+		}
+		
+		public void write(int b) throws IOException {
+			out.write(b);
+			copy(new byte[] { (byte)b }, 0, 1);
+		}
+		
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			copy(b, off, len);
+		}
+		
+		private void copy(byte[] b, int off, int len) {
+			if (body == null) {
+				return;
+			}
+			if (body.size() + (long)len > limit) {
+				body = null;
+				return;
+			}
+			body.write(b, off, len);
+		}
+		
+		public void flush() throws IOException {
+			out.flush();
+		}
+	}//end CopyingOutputStream
+	
+	/**
+	 * The number of bytes in the UTF-8 encoding of a String.
+	 */
+	private static long utf8Length(String text) {
+		long length = text.length();
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c >= 0x800 && !Character.isSurrogate(c)) {
+				length += 2;
+			}
+			else if (c >= 0x80) {
+				//Two byte characters, and each half of a surrogate 
+				//pair, which together take four bytes.
+				length += 1;
+			}
+		}
+		return length;
+	}//end utf8Length
 	
 	/**
 	 * Set up MIME type.
@@ -1,6 +1,7 @@
 package com.jsontest.server;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -12,6 +13,132 @@ import java.security.NoSuchAlgorithmException;
  */
 public class JSONUtilities {
 	
+	/**
+	 * The size of the buffer that text is encoded into before it is 
+	 * hashed. It holds the UTF-8 encoding of any String of up to a 
+	 * third as many characters.
+	 */
+	private static final int BUFFER_SIZE = 4096;
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	
+	/**
+	 * Each thread's MD5, SHA1 and SHA-256 digesters. Looking up a MessageDigest 
+	 * goes through the security providers every time, so each thread 
+	 * keeps its own for every request it handles.
+	 */
+	private static final ThreadLocal<Digester> md5_digester = new ThreadLocal<Digester>() {
+		protected Digester initialValue() {
+			return new Digester("MD5");
+		}
+	};
+	private static final ThreadLocal<Digester> sha1_digester = new ThreadLocal<Digester>() {
+		protected Digester initialValue() {
+			return new Digester("SHA1");
+		}
+	};
+	private static final ThreadLocal<Digester> sha256_digester = new ThreadLocal<Digester>() {
+		protected Digester initialValue() {
+			return new Digester("SHA-256");
+		}
+	};
+	
+	/**
+	 * A MessageDigest, with the buffers used to hash a String with it 
+	 * and write the hash out in hex. A digester is only ever used by 
+	 * the thread that created it.
+	 */
+	private static class Digester {
+		private final MessageDigest digest;
+		private final char[] chars = new char[BUFFER_SIZE / 3];
+		private final byte[] input = new byte[BUFFER_SIZE];
+		private final byte[] hash;
+		private final char[] hex;
+		
+		Digester(String algorithm) {
+			try {
+				digest = MessageDigest.getInstance(algorithm);
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException("Could not find a " + algorithm + " instance: " + e.getMessage());
+			}
+			hash = new byte[digest.getDigestLength()];
+			hex = new char[hash.length * 2];
+		}
+		
+		/**
+		 * Hashes the UTF-8 encoding of a String.
+		 * 
+		 * @param text The String to hash.
+		 * @return The hash, in lowercase hex.
+		 */
+		String hash(String text) {
+			update(text);
+			try {
+				digest.digest(hash, 0, hash.length);
+			}
+			catch (DigestException e) {
+				digest.reset();
+				throw new RuntimeException("Could not calculate the hash: " + e.getMessage());
+			}
+			for (int i = 0; i < hash.length; i++) {
+				hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+				hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xF];
+			}
+			return new String(hex);
+		}//end hash
+		
+		/**
+		 * Feeds the UTF-8 encoding of a String to the digest. Short 
+		 * Strings, which are most of what gets hashed, are encoded into 
+		 * the reused buffer; longer ones are left to String.getBytes(), 
+		 * whose copy is small next to the cost of hashing them. Like 
+		 * String.getBytes(), a surrogate that isn't part of a pair is 
+		 * encoded as '?'.
+		 */
+		private void update(String text) {
+			int length = text.length();
+			if (length > chars.length) {
+				digest.update(text.getBytes(UTF_8));
+				return;
+			}
+			text.getChars(0, length, chars, 0);
+			
+			//Every character takes at most 3 bytes, so the text always 
+			//fits in the input buffer.
+			int position = 0;
+			for (int i = 0; i < length; i++) {
+				char c = chars[i];
+				if (c < 0x80) {
+					input[position++] = (byte)c;
+				}
+				else if (c < 0x800) {
+					input[position++] = (byte)(0xC0 | (c >> 6));
+					input[position++] = (byte)(0x80 | (c & 0x3F));
+				}
+				else if (!Character.isSurrogate(c)) {
+					input[position++] = (byte)(0xE0 | (c >> 12));
+					input[position++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+					input[position++] = (byte)(0x80 | (c & 0x3F));
+				}
+				else if (Character.isHighSurrogate(c) && i + 1 < length 
+						&& Character.isLowSurrogate(chars[i + 1])) {
+					int code_point = Character.toCodePoint(c, chars[++i]);
+					input[position++] = (byte)(0xF0 | (code_point >> 18));
+					input[position++] = (byte)(0x80 | ((code_point >> 12) & 0x3F));
+					input[position++] = (byte)(0x80 | ((code_point >> 6) & 0x3F));
+					input[position++] = (byte)(0x80 | (code_point & 0x3F));
+				}
+				else {
+					input[position++] = '?';
+				}
+			}//end loop through characters
+			digest.update(input, 0, position);
+		}//end update
+	}//end Digester
+	
 	/**
 	 * Calculates a SHA1 hash from a provided String. If 
 	 * to_be_sha1 is null, a RuntimeException will be thrown.
@@ -20,31 +147,29 @@ public class JSONUtilities {
 	 * @return A SHA1 hash from the provided String.
 	 */
 	public static String generateSHA1(String to_be_sha1) {
-		String sha1_sum = "";
-		
 		//if the provided String is null, throw an Exception.
 		if (to_be_sha1 == null) {
 			throw new RuntimeException("There is no String to calculate a SHA1 hash from.");
 		}
 		
-		try {
-			MessageDigest digest = MessageDigest.getInstance("SHA1");
-	        byte[] array = digest.digest(to_be_sha1.getBytes("UTF-8"));
-	        StringBuffer collector = new StringBuffer();
-	        for (int i = 0; i < array.length; i++) {
-	            collector.append(Integer.toString((array[i] & 0xff) + 0x100, 16).substring(1));
-	        }
-	        sha1_sum = collector.toString();
-		}//end try
-		catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException("Could not find a SHA1 instance: " + e.getMessage());
-		}
-		catch (UnsupportedEncodingException e) {
-			throw new RuntimeException("Could not translate UTF-8: " + e.getMessage());
+		return sha1_digester.get().hash(to_be_sha1);
+	}//end generateSHA1
+	
+	/**
+	 * Calculates a SHA-256 hash from a provided String. If 
+	 * to_be_hashed is null, a RuntimeException will be thrown.
+	 * 
+	 * @param to_be_hashed String to calculate a SHA-256 hash from.
+	 * @return A SHA-256 hash from the provided String.
+	 */
+	public static String generateSHA256(String to_be_hashed) {
+		//if the provided String is null, throw an Exception.
+		if (to_be_hashed == null) {
+			throw new RuntimeException("There is no String to calculate a SHA-256 hash from.");
 		}
 		
-		return sha1_sum;
-	}//end generateSHA1
+		return sha256_digester.get().hash(to_be_hashed);
+	}//end generateSHA256
 	
 	/**
 	 * Calculate a MD5 hash from the provided String. If the 
@@ -56,29 +181,11 @@ public class JSONUtilities {
 	 * @throws RuntimeException If an error was encountered during calculating.
 	 */
 	public static String generateMD5(String to_be_md5) {
-		String md5_sum = "";
-		
 		//If the provided String is null, then throw an Exception.
 		if (to_be_md5 == null) {
 			throw new RuntimeException("There is no string to calculate a MD5 hash from.");
 		}
 		
-		try {
-			MessageDigest md = MessageDigest.getInstance("MD5");
-			byte[] array = md.digest(to_be_md5.getBytes("UTF-8"));
-			StringBuffer collector = new StringBuffer();
-			for (int i = 0; i < array.length; ++i) {
-				collector.append(Integer.toHexString((array[i] & 0xFF) | 0x100).substring(1, 3));
-			}
-			md5_sum = collector.toString();
-		}//end try
-		catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException("Could not find a MD5 instance: " + e.getMessage());
-		}
-		catch (UnsupportedEncodingException e) {
-			throw new RuntimeException("Could not translate UTF-8: " + e.getMessage());
-		}
-		
-		return md5_sum;
+		return md5_digester.get().hash(to_be_md5);
 	}//end generateMD5
 }//end file
@@ -1,5 +1,8 @@
 package com.jsontest.server;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+
 import org.json.*;
 
 /**
@@ -52,9 +55,30 @@ public class JSONValidator {
 	String error_info;
 	
 	/**
-	 * How long the parsing took. Counted in nanoseconds.
+	 * How long the parsing took. Counted in nanoseconds. This 
+	 * is the time taken to build the full JSONObject or 
+	 * JSONArray, and is only measured when the JSON text is 
+	 * no longer than MAX_TREE_PARSE_LENGTH, or when it failed 
+	 * the streaming pass; otherwise it is -1.
+	 */
+	long parse_time_nanoseconds = -1;
+	
+	/**
+	 * How long the streaming validation pass took. Counted in 
+	 * nanoseconds.
+	 */
+	long streaming_parse_time_nanoseconds;
+	
+	/**
+	 * The longest JSON text that will also be parsed into a full 
+	 * JSONObject or JSONArray after it passes streaming validation. 
+	 * Longer texts are only validated by the streaming pass, which 
+	 * does not hold the parsed values in memory. For these, the 
+	 * streaming pass remembers the keys of each object that is still 
+	 * open, so that duplicated keys are rejected just as the full 
+	 * parse rejects them.
 	 */
-	long parse_time_nanoseconds;
+	static final int MAX_TREE_PARSE_LENGTH = 256 * 1024;
 	
 	
 	public JSONValidator(String incoming_json) {
@@ -67,47 +91,77 @@ public class JSONValidator {
 		try {
 			/**
 			 * We have to figure out whether the user passed in a 
-			 * JSONObject or JSONArray.
+			 * JSONObject or JSONArray. If the JSON text starts with 
+			 * a [ character, then it's an array. If it's not an 
+			 * array, then it's an object.
 			 */
-			if (incoming_json.startsWith("[")) {
-				//If the JSON text starts with a [ character, then 
-				//it's an array.
-				object_or_array = "array";
-				
+			boolean is_array = incoming_json.startsWith("[");
+			object_or_array = is_array ? "array" : "object";
+			
+			/**
+			 * First check the syntax in a single streaming pass. This 
+			 * counts the first level keys or values without keeping 
+			 * any values, so the memory it needs does not depend on 
+			 * how many values the JSON text holds. Texts too long for 
+			 * the full parse below have their keys checked here.
+			 * 
+			 * The streaming pass is stricter than the reference parser 
+			 * in a few places, such as keys that are themselves arrays 
+			 * or objects, and nesting deeper than 200 levels. So when 
+			 * it fails, the full parse runs whatever the length of the 
+			 * text, and its verdict and message are the ones reported.
+			 */
+			long streaming_time_ns_start = System.nanoTime();
+			boolean tree_parse = incoming_json.length() <= MAX_TREE_PARSE_LENGTH;
+			int member_count;
+			try {
+				member_count = validateStreaming(incoming_json, is_array, !tree_parse);
+			}
+			catch (JSONException e) {
+				member_count = -1;
+				tree_parse = true;
+			}
+			long streaming_time_ns_end = System.nanoTime();
+			
+			//Count how long it took to validate.
+			streaming_parse_time_nanoseconds = streaming_time_ns_end - streaming_time_ns_start;
+			
+			/**
+			 * For reasonably sized JSON text, also build the full 
+			 * JSONObject or JSONArray. This reports the time the 
+			 * reference parser takes, and catches duplicated keys, 
+			 * which the streaming pass does not check for texts of 
+			 * this size. Longer texts that failed the streaming pass 
+			 * are parsed too.
+			 */
+			if (tree_parse) {
 				//Parse and count the time required to parse.
 				long parse_time_ns_start = System.nanoTime();
-				JSONArray incoming_json_array = new JSONArray(incoming_json);
+				int length;
+				if (is_array) {
+					length = new JSONArray(incoming_json).length();
+				}
+				else {
+					length = new JSONObject(incoming_json).length();
+				}
 				long parse_time_ns_end = System.nanoTime();
 				
 				//Count how long it took to parse.
 				parse_time_nanoseconds = parse_time_ns_end - parse_time_ns_start;
 				
-				//Count the number of values in the array.
-				size = incoming_json_array.length();
-			}//end if json text looks to be an array
-			else {
-				//If it's not an array, then it's an object.
-				object_or_array = "object";
-				
-				long parse_time_ns_start = System.nanoTime();
-				JSONObject incoming_json_object = new JSONObject(incoming_json);
-				long parse_time_ns_end = System.nanoTime();
-				
-				//Count how long it took to parse.
-				parse_time_nanoseconds = parse_time_ns_end - parse_time_ns_start;
-				
-				/**
-				 * Now we figure out the size of the JSON object.
-				 */
-				size = incoming_json_object.length();
-			}//end else, incoming json is an object
+				//If the streaming pass failed, only the full parse 
+				//has counted the first level keys or values.
+				if (member_count < 0) {
+					member_count = length;
+				}
+			}//end if json text is small enough to parse into a tree
 			
 			/**
 			 * If we've managed to get to this point, the parser was able 
-			 * to parse the JSON string into a JSON object. Therefore, validate 
-			 * should be true.
+			 * to parse the JSON string. Therefore, validate should be true.
 			 */
 			validate = true;
+			size = member_count;
 			
 			/**
 			 * If the JSON object contains key:value pairs, note that it is not 
@@ -129,7 +183,98 @@ public class JSONValidator {
 			validate = false;
 			error = e.getMessage();
 		}
-		
+	
 	}//end constructor JSONValidator(String incoming_json)
 	
+	/**
+	 * Checks the syntax of a JSON text without building a JSONObject or 
+	 * JSONArray. The structural index is tried first, since it reads 
+	 * large texts several times faster; texts it does not accept are 
+	 * checked again with the org.json pull parser, which reports the error.
+	 * 
+	 * The index does not remember keys, so when duplicated keys must be 
+	 * caught here, only the pull parser is used.
+	 * 
+	 * @param incoming_json The trimmed JSON text.
+	 * @param is_array Whether the text should be an array rather than an object.
+	 * @param check_keys Whether to reject objects with duplicated keys.
+	 * @return The number of first level keys or values.
+	 * @throws JSONException If the JSON text is invalid.
+	 */
+	private static int validateStreaming(String incoming_json, boolean is_array, 
+			boolean check_keys) throws JSONException {
+		//The index accepts either kind of text, so make sure it is 
+		//the kind the caller expects before trusting its count.
+		if (!check_keys && incoming_json.startsWith(is_array ? "[" : "{")) {
+			int member_count = JSONIndex.length(incoming_json);
+			if (member_count >= 0) {
+				return member_count;
+			}
+		}
+		
+		JSONTokener tokener = new JSONTokener(incoming_json);
+		
+		//Report a text of the wrong kind the same way the 
+		//JSONObject and JSONArray constructors do.
+		char first = tokener.nextClean();
+		if (is_array && first != '[') {
+			throw tokener.syntaxError("A JSONArray text must start with '['");
+		}
+		else if (!is_array && first != '{') {
+			throw tokener.syntaxError("A JSONObject text must begin with '{'");
+		}
+		tokener.back();
+		
+		JSONReader reader = new JSONReader(tokener);
+		if (check_keys) {
+			return validateKeys(reader, is_array);
+		}
+		reader.next();
+		return reader.skipChildren();
+	}//end validateStreaming
+	
+	/**
+	 * Reads a JSON text with the pull parser, remembering the keys of 
+	 * every object that is still open. Once an object ends its keys are 
+	 * forgotten, so the memory this needs grows with the keys of the 
+	 * open objects, not with the values.
+	 * 
+	 * @param reader The pull parser, before the first event.
+	 * @param is_array Whether the text is an array rather than an object.
+	 * @return The number of first level keys or values.
+	 * @throws JSONException If the JSON text is invalid, or an object 
+	 * has the same key twice. The message is the one the full parse 
+	 * gives for a duplicated key.
+	 */
+	private static int validateKeys(JSONReader reader, boolean is_array) throws JSONException {
+		ArrayList<HashSet<String>> open_objects = new ArrayList<HashSet<String>>();
+		int member_count = 0;
+		for (;;) {
+			int depth = reader.getDepth();
+			int event = reader.next();
+			switch (event) {
+			case JSONReader.END_DOCUMENT:
+				return member_count;
+			case JSONReader.START_OBJECT:
+				open_objects.add(new HashSet<String>());
+				break;
+			case JSONReader.END_OBJECT:
+				open_objects.remove(open_objects.size() - 1);
+				break;
+			case JSONReader.KEY:
+				String key = reader.getString();
+				if (!open_objects.get(open_objects.size() - 1).add(key)) {
+					throw new JSONException("Duplicate key \"" + key + "\"");
+				}
+				break;
+			}
+			
+			//Count the keys of a first level object, or the values of 
+			//a first level array.
+			if (depth == 1 && (is_array ? event != JSONReader.END_ARRAY : event == JSONReader.KEY)) {
+				member_count++;
+			}
+		}
+	}//end validateKeys
+	
 }//end file
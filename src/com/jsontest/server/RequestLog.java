@@ -0,0 +1,350 @@
+package com.jsontest.server;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.ThreadManager;
+
+/**
+ * Logging for JSONTest.com servlets. Request threads never write to
+ * stdout or stderr while they handle a request: they place their lines 
+ * into a lock-free ring buffer, and a background thread writes them out 
+ * in batches. If the ring buffer is full, the line is dropped and counted 
+ * rather than making the request wait.
+ *
+ * App Engine only lets request code start threads that outlive the 
+ * request through ThreadManager, and only on instances that allow 
+ * background threads. Where it refuses, as on automatically scaled 
+ * instances, there is no writer thread, and lines go to 
+ * java.util.logging instead. App Engine collects those itself, so the 
+ * request thread still never writes to stdout or stderr.
+ *
+ * Request logging is sampled per service, so that busy services don't
+ * flood the log, and long texts such as response bodies are truncated.
+ *
+ * @author Vinny
+ *
+ */
+public class RequestLog {
+	
+	/**
+	 * The number of lines the ring buffer holds. Must be a power of two.
+	 */
+	private static final int CAPACITY = 8192;
+	private static final int MASK = CAPACITY - 1;
+	
+	/**
+	 * How long the writer thread sleeps when there is nothing to write.
+	 */
+	private static final long IDLE_NANOSECONDS = 10 * 1000 * 1000;
+	
+	/**
+	 * The ring buffer. Request threads claim a position by advancing
+	 * tail, then publish their line into its slot. The writer thread
+	 * takes lines from head, clearing each slot before advancing head,
+	 * so a slot is always empty by the time it can be claimed again.
+	 */
+	private static final AtomicReferenceArray<Line> slots = new AtomicReferenceArray<Line>(CAPACITY);
+	private static final AtomicLong tail = new AtomicLong();
+	private static volatile long head;
+	
+	/**
+	 * The number of lines dropped because the ring buffer was full,
+	 * and not yet reported.
+	 */
+	private static final AtomicLong dropped = new AtomicLong();
+	
+	/**
+	 * The fraction of requests logged for services that have no rate
+	 * of their own, and the rates for services that do. The map is
+	 * replaced, never modified, when the rates are configured.
+	 */
+	private static volatile double default_sample_rate = 1.0;
+	private static volatile Map<String, Double> sample_rates = new HashMap<String, Double>();
+	
+	/**
+	 * The most characters of a body or other long text that are logged.
+	 */
+	private static volatile int body_limit = 256;
+	
+	/**
+	 * The background thread that writes lines out. Started with the
+	 * first line, and null if there is none.
+	 */
+	private static volatile Thread writer;
+	
+	/**
+	 * Whether a writer thread may be started. Cleared when the platform 
+	 * refuses to start one, and when the log is shut down.
+	 */
+	private static volatile boolean background = true;
+	
+	/**
+	 * Held by the one thread that is writing lines out of the ring 
+	 * buffer: the writer thread, or the thread shutting the log down.
+	 */
+	private static final AtomicBoolean writing = new AtomicBoolean();
+	
+	/**
+	 * Where lines go when there is no writer thread.
+	 */
+	private static final Logger logger = Logger.getLogger(RequestLog.class.getName());
+	
+	/**
+	 * A line to write, and where to write it.
+	 */
+	private static class Line {
+		final String text;
+		final boolean error;
+		
+		Line(String text, boolean error) {
+			this.text = text;
+			this.error = error;
+		}
+	}//end Line
+	
+	/**
+	 * Sets the sampling rates and body limit. Any argument that is null
+	 * leaves the current setting alone.
+	 *
+	 * @param default_rate The fraction of requests to log, from 0 to 1,
+	 * for services with no rate of their own.
+	 * @param service_rates Rates for individual services, such as
+	 * "validate=0.01,echo=0.1".
+	 * @param limit The most characters of a body to log.
+	 * @throws NumberFormatException If a rate or the limit is not a number.
+	 */
+	public static void configure(String default_rate, String service_rates, String limit) {
+		if (default_rate != null) {
+			default_sample_rate = Double.parseDouble(default_rate.trim());
+		}
+		if (service_rates != null) {
+			Map<String, Double> rates = new HashMap<String, Double>();
+			for (String service_rate : service_rates.split(",")) {
+				int equals = service_rate.indexOf('=');
+				if (equals > 0) {
+					String service = service_rate.substring(0, equals).trim().toLowerCase();
+					rates.put(service, Double.valueOf(service_rate.substring(equals + 1).trim()));
+				}
+			}
+			sample_rates = rates;
+		}
+		if (limit != null) {
+			body_limit = Integer.parseInt(limit.trim());
+		}
+	}//end configure
+	
+	/**
+	 * Decides whether a request to a service should be logged. This is
+	 * decided once per request, so that a request is logged completely
+	 * or not at all.
+	 *
+	 * @param service The name of the service.
+	 * @return Whether to log the request.
+	 */
+	public static boolean isSampled(String service) {
+		Double rate = sample_rates.get(service);
+		double sample_rate = rate != null ? rate.doubleValue() : default_sample_rate;
+		if (sample_rate >= 1) {
+			return true;
+		}
+		return sample_rate > 0 && ThreadLocalRandom.current().nextDouble() < sample_rate;
+	}
+	
+	/**
+	 * Shortens a text to the body limit, noting how long it was.
+	 *
+	 * @param text A text, which may be null.
+	 * @return The text, or its beginning if it is too long.
+	 */
+	public static String truncate(String text) {
+		int limit = body_limit;
+		if (text == null || text.length() <= limit) {
+			return text;
+		}
+		return text.substring(0, limit) + "... (" + text.length() + " characters)";
+	}
+	
+	/**
+	 * Logs a line to stdout, without waiting for it to be written.
+	 */
+	public static void log(String text) {
+		add(new Line(text, false));
+	}
+	
+	/**
+	 * Logs a line to stderr, without waiting for it to be written.
+	 */
+	public static void error(String text) {
+		add(new Line(text, true));
+	}
+	
+	/**
+	 * Places a line in the ring buffer, or drops it if the buffer is full.
+	 * Without a writer thread, the line goes to java.util.logging.
+	 */
+	private static void add(Line line) {
+		if (writer == null && background) {
+			startWriter();
+		}
+		if (writer == null) {
+			logger.log(line.error ? Level.SEVERE : Level.INFO, line.text);
+			return;
+		}
+		for (;;) {
+			long position = tail.get();
+			if (position - head >= CAPACITY) {
+				dropped.incrementAndGet();
+				return;
+			}
+			if (tail.compareAndSet(position, position + 1)) {
+				slots.lazySet((int)(position & MASK), line);
+				return;
+			}
+		}
+	}//end add
+	
+	/**
+	 * Starts the writer thread through App Engine's ThreadManager. If 
+	 * background threads are not available, lines go to 
+	 * java.util.logging instead.
+	 */
+	private static synchronized void startWriter() {
+		if (writer != null || !background) {
+			return;
+		}
+		Thread thread;
+		try {
+			thread = ThreadManager.createBackgroundThread(new Runnable() {
+				public void run() {
+					while (Thread.currentThread() == writer) {
+						if (!writeExclusively()) {
+							LockSupport.parkNanos(IDLE_NANOSECONDS);
+						}
+					}
+				}
+			});
+		}
+		catch (RuntimeException e) {
+			background = false;
+			return;
+		}
+		catch (LinkageError e) {
+			//Not running on App Engine at all.
+			background = false;
+			return;
+		}
+		thread.setDaemon(true);
+		writer = thread;
+		thread.start();
+	}//end startWriter
+	
+	/**
+	 * Writes out the waiting lines, unless another thread is already 
+	 * writing them.
+	 * 
+	 * @return Whether anything was written.
+	 */
+	private static boolean writeExclusively() {
+		if (!writing.compareAndSet(false, true)) {
+			return false;
+		}
+		try {
+			return write();
+		}
+		finally {
+			writing.set(false);
+		}
+	}
+	
+	/**
+	 * Writes out every line in the ring buffer. Only the thread holding 
+	 * writing calls this.
+	 *
+	 * @return Whether anything was written.
+	 */
+	private static boolean write() {
+		StringBuilder out = new StringBuilder();
+		StringBuilder err = new StringBuilder();
+		long position = head;
+		for (;;) {
+			int index = (int)(position & MASK);
+			Line line = slots.get(index);
+			
+			//An empty slot is either the end of the lines, or a line
+			//whose position was claimed but not yet published. Either
+			//way, it is picked up on the next pass.
+			if (line == null) {
+				break;
+			}
+			slots.lazySet(index, null);
+			position += 1;
+			head = position;
+			(line.error ? err : out).append(line.text).append('\n');
+		}
+		
+		long lost = dropped.getAndSet(0);
+		if (lost > 0) {
+			err.append("RequestLog: ").append(lost).append(" lines dropped, the log buffer was full.\n");
+		}
+		
+		print(System.out, out);
+		print(System.err, err);
+		return out.length() > 0 || err.length() > 0;
+	}//end write
+	
+	private static void print(PrintStream stream, StringBuilder text) {
+		if (text.length() > 0) {
+			stream.print(text);
+			stream.flush();
+		}
+	}
+	
+	/**
+	 * Waits, for at most a second, until the writer thread has written
+	 * every line logged so far.
+	 */
+	public static void flush() {
+		long deadline = System.nanoTime() + 1000L * 1000 * 1000;
+		while (writer != null && head < tail.get() && System.nanoTime() < deadline) {
+			LockSupport.parkNanos(1000 * 1000);
+		}
+	}
+	
+	/**
+	 * Stops the writer thread, after it has written every line logged 
+	 * so far, so that it does not outlive the application. Used when 
+	 * the servlet is taken out of service. Lines logged afterwards go to 
+	 * java.util.logging.
+	 */
+	public static void shutdown() {
+		Thread thread;
+		synchronized (RequestLog.class) {
+			background = false;
+			thread = writer;
+		}
+		flush();
+		writer = null;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+			try {
+				thread.join(1000);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		//Write out any line added while the writer was stopping.
+		writeExclusively();
+	}//end shutdown
+	
+}//end file
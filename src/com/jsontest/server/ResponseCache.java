@@ -0,0 +1,404 @@
+package com.jsontest.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.*;
+
+/**
+ * A bounded, in-process cache of the serialized responses of services
+ * whose response depends only on the request (see CacheableService).
+ * Test suites tend to request the same URLs over and over, and for
+ * these the cached bytes are written out directly.
+ *
+ * The cache is a segmented LRU: a new response first goes into the
+ * probation segment, and is only moved to the protected segment when
+ * it is requested again. Responses requested only once are evicted
+ * from probation first, so a burst of one-off requests can't push out
+ * the responses that are actually repeated. The cache is limited by
+ * the bytes it holds rather than by the number of responses, and
+ * responses expire after a time to live.
+ *
+ * The cache is split into shards by key, each with its own lock, so
+ * that request threads rarely wait on one another.
+ *
+ * @author Vinny
+ *
+ */
+public class ResponseCache {
+	
+	/**
+	 * The number of shards. Must be a power of two.
+	 */
+	private static final int SHARDS = 16;
+	
+	/**
+	 * The share of each shard's bytes given to the protected segment.
+	 */
+	private static final double PROTECTED_SHARE = 0.8;
+	
+	/**
+	 * Bytes counted for each entry on top of its key and body, for the
+	 * objects and map nodes that hold them.
+	 */
+	private static final int ENTRY_OVERHEAD = 128;
+	
+	/**
+	 * Inputs longer than this are kept in a key as their SHA-256 hash, 
+	 * so that a large input, such as JSON to validate, costs the cache 
+	 * no more than a small one.
+	 */
+	private static final int DIGEST_THRESHOLD = 64;
+	
+	/**
+	 * The shards, replaced when the cache is configured. Null when the
+	 * cache is turned off.
+	 */
+	private static volatile Shard[] shards = createShards(16L * 1024 * 1024);
+	
+	/**
+	 * How long a response stays in the cache.
+	 */
+	private static volatile long ttl_nanoseconds = 300L * 1000 * 1000 * 1000;
+	
+	private static volatile long capacity_bytes = 16L * 1024 * 1024;
+	
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong evictions = new AtomicLong();
+	private static final AtomicLong expirations = new AtomicLong();
+	
+	/**
+	 * Identifies a cached response: the service, the part of the
+	 * request the response depends on, and the callback it is
+	 * wrapped in. A long input is held as its hash, prefixed so that
+	 * it is never equal to a short input.
+	 */
+	public static class Key {
+		final String service;
+		final String input;
+		final String callback;
+		private final int hash;
+		
+		public Key(String service, String input, String callback) {
+			this.service = service;
+			if (input.length() > DIGEST_THRESHOLD) {
+				input = "sha256:" + JSONUtilities.generateSHA256(input);
+			}
+			this.input = input;
+			this.callback = callback;
+			int hash = service.hashCode();
+			hash = 31 * hash + input.hashCode();
+			hash = 31 * hash + (callback == null ? 0 : callback.hashCode());
+			this.hash = hash;
+		}
+		
+		public int hashCode() {
+			return hash;
+		}
+		
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key)other;
+			return hash == key.hash && service.equals(key.service) && input.equals(key.input)
+					&& (callback == null ? key.callback == null : callback.equals(key.callback));
+		}
+		
+		long size() {
+			return 2L * (service.length() + input.length() + (callback == null ? 0 : callback.length()));
+		}
+	}//end Key
+	
+	/**
+	 * A cached response.
+	 */
+	public static class Entry {
+		
+		/**
+		 * The response body, as written out.
+		 */
+		final byte[] body;
+		
+		/**
+		 * Whether the response reported an error, for the service's
+		 * metrics.
+		 */
+		final boolean error;
+		
+		final long expires;
+		final long size;
+		
+		Entry(Key key, byte[] body, boolean error, long expires) {
+			this.body = body;
+			this.error = error;
+			this.expires = expires;
+			this.size = key.size() + body.length + ENTRY_OVERHEAD;
+		}
+	}//end Entry
+	
+	/**
+	 * One shard of the cache, with its two segments. Both maps are
+	 * kept in access order, so the least recently used entry is first.
+	 */
+	private static class Shard {
+		private final LinkedHashMap<Key, Entry> probation = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+		private final LinkedHashMap<Key, Entry> protected_entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+		private final long capacity;
+		private final long protected_capacity;
+		private long probation_bytes;
+		private long protected_bytes;
+		
+		Shard(long capacity) {
+			this.capacity = capacity;
+			this.protected_capacity = (long)(capacity * PROTECTED_SHARE);
+		}
+		
+		synchronized Entry get(Key key, long now) {
+			Entry entry = protected_entries.get(key);
+			if (entry != null) {
+				if (now - entry.expires > 0) {
+					protected_entries.remove(key);
+					protected_bytes -= entry.size;
+					expirations.incrementAndGet();
+					return null;
+				}
+				return entry;
+			}
+			
+			entry = probation.remove(key);
+			if (entry == null) {
+				return null;
+			}
+			probation_bytes -= entry.size;
+			if (now - entry.expires > 0) {
+				expirations.incrementAndGet();
+				return null;
+			}
+			
+			//Requested a second time: promote the entry to the protected
+			//segment, making room by moving protected entries back to
+			//probation.
+			protected_entries.put(key, entry);
+			protected_bytes += entry.size;
+			Iterator<Map.Entry<Key, Entry>> oldest = protected_entries.entrySet().iterator();
+			while (protected_bytes > protected_capacity && oldest.hasNext()) {
+				Map.Entry<Key, Entry> demoted = oldest.next();
+				oldest.remove();
+				protected_bytes -= demoted.getValue().size;
+				probation.put(demoted.getKey(), demoted.getValue());
+				probation_bytes += demoted.getValue().size;
+			}
+			evict();
+			return entry;
+		}//end get
+		
+		synchronized void put(Key key, Entry entry) {
+			Entry old = probation.remove(key);
+			if (old != null) {
+				probation_bytes -= old.size;
+			}
+			old = protected_entries.remove(key);
+			if (old != null) {
+				protected_bytes -= old.size;
+			}
+			probation.put(key, entry);
+			probation_bytes += entry.size;
+			evict();
+		}//end put
+		
+		/**
+		 * Evicts the least recently used entries, from probation first,
+		 * until the shard fits in its capacity.
+		 */
+		private void evict() {
+			Iterator<Entry> oldest = probation.values().iterator();
+			while (probation_bytes + protected_bytes > capacity && oldest.hasNext()) {
+				probation_bytes -= oldest.next().size;
+				oldest.remove();
+				evictions.incrementAndGet();
+			}
+			oldest = protected_entries.values().iterator();
+			while (probation_bytes + protected_bytes > capacity && oldest.hasNext()) {
+				protected_bytes -= oldest.next().size;
+				oldest.remove();
+				evictions.incrementAndGet();
+			}
+		}//end evict
+		
+		synchronized int entries() {
+			return probation.size() + protected_entries.size();
+		}
+		
+		synchronized long bytes() {
+			return probation_bytes + protected_bytes;
+		}
+	}//end Shard
+	
+	private static Shard[] createShards(long capacity) {
+		if (capacity <= 0) {
+			return null;
+		}
+		Shard[] created = new Shard[SHARDS];
+		for (int i = 0; i < SHARDS; i++) {
+			created[i] = new Shard(capacity / SHARDS);
+		}
+		return created;
+	}
+	
+	/**
+	 * Sets the size and time to live of the cache, emptying it. Any
+	 * argument that is null leaves the current setting alone.
+	 *
+	 * @param capacity The most bytes the cache holds. 0 turns the
+	 * cache off.
+	 * @param ttl How long, in seconds, a response stays in the cache.
+	 * @throws NumberFormatException If an argument is not a number.
+	 */
+	public static void configure(String capacity, String ttl) {
+		if (ttl != null) {
+			ttl_nanoseconds = (long)(Double.parseDouble(ttl.trim()) * 1e9);
+		}
+		if (capacity != null) {
+			capacity_bytes = Long.parseLong(capacity.trim());
+		}
+		shards = createShards(capacity_bytes);
+	}//end configure
+	
+	/**
+	 * Whether the cache is turned on.
+	 */
+	public static boolean isEnabled() {
+		return shards != null;
+	}
+	
+	private static Shard shard(Shard[] shards, Key key) {
+		int hash = key.hash;
+		hash ^= hash >>> 16;
+		return shards[hash & (SHARDS - 1)];
+	}
+	
+	/**
+	 * Looks up a cached response.
+	 *
+	 * @param key The key of the response.
+	 * @return The cached response, or null if it isn't cached or
+	 * has expired.
+	 */
+	public static Entry get(Key key) {
+		Shard[] current = shards;
+		if (current == null) {
+			return null;
+		}
+		Entry entry = shard(current, key).get(key, System.nanoTime());
+		(entry != null ? hits : misses).incrementAndGet();
+		return entry;
+	}//end get
+	
+	/**
+	 * The longest response body put() would keep for a key, so that
+	 * responses too large to cache aren't copied for the cache.
+	 *
+	 * @param key The key of the response.
+	 * @return The most bytes, or -1 if the cache is turned off.
+	 */
+	public static long bodyLimit(Key key) {
+		Shard[] current = shards;
+		if (current == null) {
+			return -1;
+		}
+		return shard(current, key).capacity / 8 - key.size() - ENTRY_OVERHEAD;
+	}
+	
+	/**
+	 * Caches a response. Responses too large to fit comfortably in a
+	 * shard are not cached.
+	 *
+	 * @param key The key of the response.
+	 * @param body The response body, as written out.
+	 * @param error Whether the response reported an error.
+	 */
+	public static void put(Key key, byte[] body, boolean error) {
+		Shard[] current = shards;
+		if (current == null) {
+			return;
+		}
+		Entry entry = new Entry(key, body, error, System.nanoTime() + ttl_nanoseconds);
+		Shard shard = shard(current, key);
+		if (entry.size > shard.capacity / 8) {
+			return;
+		}
+		shard.put(key, entry);
+	}//end put
+	
+	/**
+	 * Reports the cache's size and hit rate.
+	 *
+	 * @return A JSONObject with hits, misses, hit_rate, evictions,
+	 * expirations, entries, bytes and capacity_bytes.
+	 */
+	public static JSONObject toJSON() throws JSONException {
+		long hit_count = hits.get();
+		long miss_count = misses.get();
+		JSONObject json = new JSONObject();
+		json.put("enabled", isEnabled());
+		json.put("hits", hit_count);
+		json.put("misses", miss_count);
+		json.put("hit_rate", hit_count + miss_count > 0 ? (double)hit_count / (hit_count + miss_count) : 0);
+		json.put("evictions", evictions.get());
+		json.put("expirations", expirations.get());
+		json.put("entries", entries());
+		json.put("bytes", bytes());
+		json.put("capacity_bytes", isEnabled() ? capacity_bytes : 0);
+		return json;
+	}//end toJSON
+	
+	/**
+	 * Reports the cache's counters in the Prometheus text exposition
+	 * format.
+	 *
+	 * @return The metrics, one sample per line.
+	 */
+	public static String toPrometheus() {
+		StringBuilder text = new StringBuilder();
+		sample(text, "jsontest_response_cache_hits_total", "counter", "Requests answered from the response cache.", hits.get());
+		sample(text, "jsontest_response_cache_misses_total", "counter", "Cacheable requests not found in the response cache.", misses.get());
+		sample(text, "jsontest_response_cache_evictions_total", "counter", "Responses evicted to make room in the response cache.", evictions.get());
+		sample(text, "jsontest_response_cache_expirations_total", "counter", "Responses dropped from the response cache when they expired.", expirations.get());
+		sample(text, "jsontest_response_cache_entries", "gauge", "Responses in the response cache.", entries());
+		sample(text, "jsontest_response_cache_bytes", "gauge", "Bytes held by the response cache.", bytes());
+		return text.toString();
+	}//end toPrometheus
+	
+	private static void sample(StringBuilder text, String name, String type, String help, long value) {
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		text.append(name).append(' ').append(value).append('\n');
+	}
+	
+	private static long entries() {
+		Shard[] current = shards;
+		long entries = 0;
+		if (current != null) {
+			for (Shard shard : current) {
+				entries += shard.entries();
+			}
+		}
+		return entries;
+	}
+	
+	private static long bytes() {
+		Shard[] current = shards;
+		long bytes = 0;
+		if (current != null) {
+			for (Shard shard : current) {
+				bytes += shard.bytes();
+			}
+		}
+		return bytes;
+	}
+	
+}//end file
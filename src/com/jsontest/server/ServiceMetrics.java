@@ -0,0 +1,293 @@
+package com.jsontest.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.*;
+
+/**
+ * Request counts, error counts, response sizes and latencies for one
+ * JSONTest.com service.
+ *
+ * Every request thread updates these, so nothing here takes a lock.
+ * Counters are striped over several cells, each on its own cache line,
+ * so that threads on different cores rarely touch the same cell; the
+ * cells are only added up when the metrics are read.
+ *
+ * Latencies are kept in a histogram with buckets of the same kind as
+ * HdrHistogram: each power of two is split into SUB_BUCKETS linear
+ * buckets, so any latency is recorded to within about 3% of its value,
+ * from nanoseconds to hours, in a fixed number of buckets.
+ *
+ * @author Vinny
+ *
+ */
+public class ServiceMetrics {
+	
+	/**
+	 * The metrics of every service that has been requested, by name.
+	 */
+	private static final ConcurrentHashMap<String, ServiceMetrics> services = new ConcurrentHashMap<String, ServiceMetrics>();
+	
+	/**
+	 * The number of cells each counter is striped over, and the number
+	 * of longs between cells, which keeps each cell on its own 64 byte
+	 * cache line. STRIPES must be a power of two.
+	 */
+	private static final int STRIPES = 16;
+	private static final int PADDING = 8;
+	
+	/**
+	 * Each power of two is split into this many buckets, of which the
+	 * lower half overlap the power of two below. Must be a power of two.
+	 */
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_BUCKETS = SUB_BUCKETS / 2;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 2) * HALF_BUCKETS;
+	
+	/**
+	 * The percentiles reported, and their names as JSON members and as
+	 * Prometheus quantiles.
+	 */
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+	private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+	private static final String[] QUANTILES = { "0.5", "0.9", "0.99", "0.999" };
+	
+	private final StripedCounter requests = new StripedCounter();
+	private final StripedCounter errors = new StripedCounter();
+	private final StripedCounter response_bytes = new StripedCounter();
+	private final StripedCounter latency_sum = new StripedCounter();
+	private final AtomicLongArray latency_buckets = new AtomicLongArray(BUCKETS);
+	
+	/**
+	 * A long counter striped over several cells. A thread always adds to
+	 * the same cell, chosen from its id.
+	 */
+	private static class StripedCounter {
+		private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+		
+		void add(long value) {
+			int stripe = (int)Thread.currentThread().getId() & (STRIPES - 1);
+			cells.getAndAdd(stripe * PADDING, value);
+		}
+		
+		long sum() {
+			long sum = 0;
+			for (int i = 0; i < STRIPES; i++) {
+				sum += cells.get(i * PADDING);
+			}
+			return sum;
+		}
+	}//end StripedCounter
+	
+	/**
+	 * Gets the metrics of a service, creating them the first time the
+	 * service is requested.
+	 *
+	 * @param service The name of the service.
+	 * @return The service's metrics.
+	 */
+	public static ServiceMetrics forService(String service) {
+		ServiceMetrics metrics = services.get(service);
+		if (metrics == null) {
+			ServiceMetrics created = new ServiceMetrics();
+			metrics = services.putIfAbsent(service, created);
+			if (metrics == null) {
+				metrics = created;
+			}
+		}
+		return metrics;
+	}//end forService
+	
+	/**
+	 * Records one request.
+	 *
+	 * @param latency_nanoseconds How long the request took.
+	 * @param bytes The size of the response.
+	 * @param error Whether the response reported an error.
+	 */
+	public void record(long latency_nanoseconds, long bytes, boolean error) {
+		requests.add(1);
+		if (error) {
+			errors.add(1);
+		}
+		response_bytes.add(bytes);
+		latency_sum.add(latency_nanoseconds);
+		latency_buckets.getAndIncrement(bucket(Math.max(0, latency_nanoseconds)));
+	}//end record
+	
+	/**
+	 * Finds the histogram bucket of a value. Values below SUB_BUCKETS
+	 * have a bucket each; above that, a value is shifted right until
+	 * it fits in SUB_BUCKET_BITS bits, and the shift picks the group
+	 * of buckets.
+	 */
+	private static int bucket(long value) {
+		int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+		return shift * HALF_BUCKETS + (int)(value >>> shift);
+	}
+	
+	/**
+	 * The largest value that falls into a bucket.
+	 */
+	private static long highestValue(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / HALF_BUCKETS - 1;
+		long sub_bucket = bucket - shift * HALF_BUCKETS;
+		return ((sub_bucket + 1) << shift) - 1;
+	}
+	
+	/**
+	 * Finds the latencies at the reported percentiles, from a snapshot 
+	 * of the histogram's counts.
+	 */
+	private long[] percentiles(long[] counts, long total) {
+		long[] values = new long[PERCENTILES.length];
+		for (int p = 0; p < PERCENTILES.length; p++) {
+			long wanted = Math.max(1, (long)Math.ceil(total * PERCENTILES[p] / 100));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= wanted) {
+					values[p] = highestValue(i);
+					break;
+				}
+			}
+		}
+		return values;
+	}//end percentiles
+	
+	private long[] bucketCounts() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = latency_buckets.get(i);
+		}
+		return counts;
+	}
+	
+	private static long sum(long[] counts) {
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		return total;
+	}
+	
+	/**
+	 * Reports the metrics of this service.
+	 *
+	 * @return A JSONObject with requests, errors, response_bytes, and
+	 * latency_nanoseconds (count, mean, max and percentiles).
+	 */
+	public JSONObject toJSON() throws JSONException {
+		long[] counts = bucketCounts();
+		long count = sum(counts);
+		
+		JSONObject json = new JSONObject();
+		json.put("requests", requests.sum());
+		json.put("errors", errors.sum());
+		json.put("response_bytes", response_bytes.sum());
+		
+		JSONObject latency = new JSONObject();
+		latency.put("count", count);
+		latency.put("mean", count > 0 ? latency_sum.sum() / count : 0);
+		if (count > 0) {
+			long[] values = percentiles(counts, count);
+			for (int p = 0; p < PERCENTILES.length; p++) {
+				latency.put(PERCENTILE_NAMES[p], values[p]);
+			}
+			int highest = BUCKETS - 1;
+			while (counts[highest] == 0) {
+				highest--;
+			}
+			latency.put("max", highestValue(highest));
+		}
+		json.put("latency_nanoseconds", latency);
+		return json;
+	}//end toJSON
+	
+	/**
+	 * Reports the metrics of every service.
+	 *
+	 * @return A JSONObject with the metrics of each service, by name.
+	 */
+	public static JSONObject allToJSON() throws JSONException {
+		JSONObject json = new JSONObject();
+		for (Map.Entry<String, ServiceMetrics> entry : sorted().entrySet()) {
+			json.put(entry.getKey(), entry.getValue().toJSON());
+		}
+		return json;
+	}
+	
+	/**
+	 * Reports the metrics of every service in the Prometheus text
+	 * exposition format. Latencies are reported as a summary, in seconds.
+	 *
+	 * @return The metrics, one sample per line.
+	 */
+	public static String allToPrometheus() {
+		Map<String, ServiceMetrics> metrics = sorted();
+		StringBuilder text = new StringBuilder();
+		
+		text.append("# HELP jsontest_requests_total Requests handled, by service.\n");
+		text.append("# TYPE jsontest_requests_total counter\n");
+		for (Map.Entry<String, ServiceMetrics> entry : metrics.entrySet()) {
+			sample(text, "jsontest_requests_total", entry.getKey(), null, entry.getValue().requests.sum());
+		}
+		
+		text.append("# HELP jsontest_errors_total Requests whose response reported an error, by service.\n");
+		text.append("# TYPE jsontest_errors_total counter\n");
+		for (Map.Entry<String, ServiceMetrics> entry : metrics.entrySet()) {
+			sample(text, "jsontest_errors_total", entry.getKey(), null, entry.getValue().errors.sum());
+		}
+		
+		text.append("# HELP jsontest_response_bytes_total Bytes of response bodies, by service.\n");
+		text.append("# TYPE jsontest_response_bytes_total counter\n");
+		for (Map.Entry<String, ServiceMetrics> entry : metrics.entrySet()) {
+			sample(text, "jsontest_response_bytes_total", entry.getKey(), null, entry.getValue().response_bytes.sum());
+		}
+		
+		text.append("# HELP jsontest_request_duration_seconds Time spent handling requests, by service.\n");
+		text.append("# TYPE jsontest_request_duration_seconds summary\n");
+		for (Map.Entry<String, ServiceMetrics> entry : metrics.entrySet()) {
+			ServiceMetrics service = entry.getValue();
+			long[] counts = service.bucketCounts();
+			long count = sum(counts);
+			if (count > 0) {
+				long[] values = service.percentiles(counts, count);
+				for (int p = 0; p < PERCENTILES.length; p++) {
+					sample(text, "jsontest_request_duration_seconds", entry.getKey(), QUANTILES[p], values[p] / 1e9);
+				}
+			}
+			sample(text, "jsontest_request_duration_seconds_sum", entry.getKey(), null, service.latency_sum.sum() / 1e9);
+			sample(text, "jsontest_request_duration_seconds_count", entry.getKey(), null, count);
+		}
+		return text.toString();
+	}//end allToPrometheus
+	
+	private static void sample(StringBuilder text, String name, String service, String quantile, Object value) {
+		text.append(name).append("{service=\"");
+		for (int i = 0; i < service.length(); i++) {
+			char c = service.charAt(i);
+			if (c == '"' || c == '\\') {
+				text.append('\\');
+			}
+			text.append(c);
+		}
+		text.append('"');
+		if (quantile != null) {
+			text.append(",quantile=\"").append(quantile).append('"');
+		}
+		text.append("} ").append(value).append('\n');
+	}//end sample
+	
+	private static Map<String, ServiceMetrics> sorted() {
+		return new TreeMap<String, ServiceMetrics>(services);
+	}
+	
+}//end file
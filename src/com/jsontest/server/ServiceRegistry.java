@@ -0,0 +1,71 @@
+package com.jsontest.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps service names and their aliases to JSONTest.com services. The 
+ * registry is filled in once, when the servlet starts, and is only 
+ * read afterwards, so each request finds its service with a single 
+ * hash lookup.
+ * 
+ * @author Vinny
+ *
+ */
+public class ServiceRegistry {
+	
+	/**
+	 * Every registered name and alias, in lowercase.
+	 */
+	private final Map<String, JSONTestService> services = new HashMap<String, JSONTestService>();
+	
+	/**
+	 * The service that answers requests for names that are not registered.
+	 */
+	private final JSONTestService fallback;
+	
+	public ServiceRegistry(JSONTestService fallback) {
+		this.fallback = fallback;
+	}
+	
+	/**
+	 * Registers a service under its name and any aliases.
+	 * 
+	 * @param service The service to register.
+	 * @param aliases Other names that the service may be requested by.
+	 * @throws IllegalArgumentException If a name is already registered.
+	 */
+	public void register(JSONTestService service, String... aliases) {
+		add(service.getName(), service);
+		for (String alias : aliases) {
+			add(alias, service);
+		}
+	}//end register
+	
+	private void add(String name, JSONTestService service) {
+		name = name.toLowerCase();
+		if (services.containsKey(name)) {
+			throw new IllegalArgumentException("Service already registered: " + name);
+		}
+		services.put(name, service);
+	}
+	
+	/**
+	 * Finds the service for a requested name. Names are matched 
+	 * regardless of case.
+	 * 
+	 * @param name The requested service name.
+	 * @return The service, or the fallback service if no service 
+	 * has the name.
+	 */
+	public JSONTestService lookup(String name) {
+		JSONTestService service = services.get(name);
+		if (service == null) {
+			//Most requests are already in lowercase, so only 
+			//convert the name when the first lookup misses.
+			service = services.get(name.toLowerCase());
+		}
+		return service != null ? service : fallback;
+	}//end lookup
+	
+}//end file
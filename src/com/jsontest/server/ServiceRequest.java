@@ -0,0 +1,71 @@
+package com.jsontest.server;
+
+import javax.servlet.http.*;
+
+import org.json.*;
+
+/**
+ * Holds one request to a JSONTest.com service, and the response that 
+ * the service builds for it.
+ * 
+ * @author Vinny
+ *
+ */
+public class ServiceRequest {
+	
+	/**
+	 * The servlet request and response.
+	 */
+	final HttpServletRequest req;
+	final HttpServletResponse resp;
+	
+	/**
+	 * The JSONObject that most services store their response in.
+	 */
+	final JSONObject json = new JSONObject();
+	
+	/**
+	 * JSON text for the response, for services that need low-level 
+	 * access to it. If it is set, the JSONObject is ignored.
+	 */
+	String json_text;
+	
+	/**
+	 * The callback request parameter, for JSONP responses. Services 
+	 * may clear it when wrapping their response makes no sense.
+	 */
+	String callback;
+	
+	/**
+	 * The content type of the response, for services whose response 
+	 * is not JSON. If it is null, the content type is chosen from the 
+	 * mime and callback request parameters.
+	 */
+	String content_type;
+	
+	/**
+	 * Whether the service has already finished the response, so 
+	 * that nothing more should be written (for instance, 404).
+	 */
+	boolean finished;
+	
+	/**
+	 * Whether this request is being logged. Services only log for 
+	 * requests that are, so that a request is logged completely or 
+	 * not at all.
+	 */
+	boolean logged;
+	
+	/**
+	 * Whether the response reported an error. Set by the servlet once 
+	 * the response is written, and counted in the service's metrics.
+	 */
+	boolean error;
+	
+	public ServiceRequest(HttpServletRequest req, HttpServletResponse resp, String callback) {
+		this.req = req;
+		this.resp = resp;
+		this.callback = callback;
+	}
+	
+}//end file
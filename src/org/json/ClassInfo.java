@@ -0,0 +1,492 @@
+package org.json;
+
+/*
+Copyright (c) 2013 JSON.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+The Software shall be used for Good, not Evil.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * ClassInfo holds what JSONObject needs to know about a class in order to
+ * wrap its instances: whether they are beans or are represented by their
+ * toString values, and the names and getter methods of a bean's properties.
+ * The reflection is done once per class. The results are kept in a
+ * ClassValue, so they are released with the class and do not pin the class
+ * loader of a redeployed application.
+ * <p>
+ * A ClassInfo can also write a bean as JSON text directly, without making a
+ * JSONObject. Each getter is also kept as a method handle typed to its
+ * primitive return type, so that numbers and booleans are written without
+ * boxing them.
+ * <p>
+ * A property can have more than one getter, such as an isX and a getX
+ * method. JSONObject(Object bean) puts each getter's value into its map in
+ * turn, so the value of the last getter that returns one wins, in the place
+ * of the property's first getter. ClassInfo keeps all of a property's getters
+ * and gives the same result. Bridge methods, which the compiler adds for
+ * generic and covariant getters, only call the getter they stand for, and are
+ * left out.
+ * @author JSON.org
+ * @version 2013-01-24
+ */
+final class ClassInfo {
+
+    /**
+     * The ClassInfo of each class that has been wrapped.
+     */
+    private static final ClassValue infos = new ClassValue() {
+        protected Object computeValue(Class klass) {
+            return new ClassInfo(klass);
+        }
+    };
+
+    /**
+     * The type of the getters after they are adapted to take and return
+     * Objects.
+     */
+    private static final MethodType getterType =
+        MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * True if the class's instances are turned into JSONObjects. False if the
+     * class is in a java or javax package or was loaded by the bootstrap class
+     * loader, in which case its instances are represented by their toString
+     * values.
+     */
+    final boolean bean;
+
+    /**
+     * The getters of each property, parallel to names, in the order of the
+     * class's methods, adapted to return Objects.
+     */
+    private final MethodHandle[][] getters;
+
+    /**
+     * The kind of value each getter returns, parallel to getters: 'D'
+     * (double), 'F' (float), 'I' (byte, short, or int), 'J' (long), 'L' (an
+     * Object or char), or 'Z' (boolean).
+     */
+    private final char[][] kinds;
+
+    /**
+     * The property names, each once, in the order of the class's methods.
+     */
+    final String[] names;
+
+    /**
+     * The getters, parallel to getters, adapted to return the primitive type
+     * of their kind, or Object.
+     */
+    private final MethodHandle[][] typedGetters;
+
+
+    /**
+     * Reflect on a class. The properties are found as in
+     * JSONObject(Object bean): public methods with no parameters whose names
+     * are "get" or "is" followed by an uppercase letter, other than getClass
+     * and getDeclaringClass. Getters that cannot be accessed and bridge methods
+     * are left out.
+     * @param klass A class.
+     */
+    private ClassInfo(Class klass) {
+        Package objectPackage = klass.getPackage();
+        String objectPackageName = objectPackage != null
+            ? objectPackage.getName()
+            : "";
+        this.bean = !objectPackageName.startsWith("java.") &&
+            !objectPackageName.startsWith("javax.") &&
+            klass.getClassLoader() != null;
+
+// If klass is a System class then set includeSuperClass to false.
+
+        boolean includeSuperClass = klass.getClassLoader() != null;
+
+        Method[] methods = includeSuperClass
+                ? klass.getMethods()
+                : klass.getDeclaredMethods();
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        ArrayList names = new ArrayList();
+        HashMap positions = new HashMap();
+        ArrayList getters = new ArrayList();
+        ArrayList typedGetters = new ArrayList();
+        ArrayList kinds = new ArrayList();
+        for (int i = 0; i < methods.length; i += 1) {
+            Method method = methods[i];
+            if (Modifier.isPublic(method.getModifiers()) && !method.isBridge()) {
+                String key = propertyName(method.getName());
+                if (key != null && method.getParameterTypes().length == 0) {
+                    MethodHandle handle;
+                    try {
+                        handle = lookup.unreflect(method);
+                    } catch (Exception ignore) {
+                        continue;
+                    }
+                    char kind = kind(method.getReturnType());
+                    Integer position = (Integer)positions.get(key);
+                    if (position == null) {
+                        position = Integer.valueOf(names.size());
+                        positions.put(key, position);
+                        names.add(key);
+                        getters.add(new ArrayList());
+                        typedGetters.add(new ArrayList());
+                        kinds.add(new StringBuffer());
+                    }
+                    int p = position.intValue();
+                    ((ArrayList)getters.get(p)).add(handle.asType(getterType));
+                    ((ArrayList)typedGetters.get(p)).add(handle.asType(
+                        MethodType.methodType(
+                            kind == 'D' ? double.class
+                            : kind == 'F' ? float.class
+                            : kind == 'I' ? int.class
+                            : kind == 'J' ? long.class
+                            : kind == 'Z' ? boolean.class
+                            : Object.class, Object.class)));
+                    ((StringBuffer)kinds.get(p)).append(kind);
+                }
+            }
+        }
+        int length = names.size();
+        this.names = (String[])names.toArray(new String[length]);
+        this.getters = new MethodHandle[length][];
+        this.kinds = new char[length][];
+        this.typedGetters = new MethodHandle[length][];
+        for (int p = 0; p < length; p += 1) {
+            ArrayList list = (ArrayList)getters.get(p);
+            this.getters[p] = (MethodHandle[])list.toArray(
+                new MethodHandle[list.size()]);
+            list = (ArrayList)typedGetters.get(p);
+            this.typedGetters[p] = (MethodHandle[])list.toArray(
+                new MethodHandle[list.size()]);
+            this.kinds[p] = kinds.get(p).toString().toCharArray();
+        }
+    }
+
+
+    /**
+     * Get the ClassInfo of a class, reflecting on it the first time.
+     * @param klass A class.
+     * @return The ClassInfo.
+     */
+    static ClassInfo forClass(Class klass) {
+        return (ClassInfo)infos.get(klass);
+    }
+
+
+    /**
+     * Get a property's value. If the property has more than one getter, the
+     * value of the last one that returns a value is used.
+     * @param bean An instance of the class.
+     * @param i The index of the property in names.
+     * @return The property's value, or null if every getter returned null or
+     *  threw anything. Like Method.invoke, which wraps whatever a getter
+     *  throws, this includes Errors.
+     */
+    Object get(Object bean, int i) {
+        MethodHandle[] handles = this.getters[i];
+        for (int k = handles.length - 1; k >= 0; k -= 1) {
+            try {
+                Object value = (Object)handles[k].invokeExact(bean);
+                if (value != null) {
+                    return value;
+                }
+            } catch (Throwable ignore) {
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Determine if a map has a null key with a value. JSONObject.wrap cannot
+     * make a JSONObject of such a map, and gives null instead.
+     * @param map A map.
+     * @return true if the map has a value for the null key.
+     */
+    private static boolean hasNullKey(Map map) {
+        try {
+            return map.get(null) != null;
+        } catch (RuntimeException e) {
+
+// A map that does not allow null keys cannot have one.
+
+            return false;
+        }
+    }
+
+
+    /**
+     * Get the kind of value that a getter returns.
+     * @param type The getter's return type.
+     * @return 'D', 'F', 'I', 'J', 'L', or 'Z'.
+     */
+    private static char kind(Class type) {
+        if (type == double.class) {
+            return 'D';
+        }
+        if (type == float.class) {
+            return 'F';
+        }
+        if (type == int.class || type == short.class || type == byte.class) {
+            return 'I';
+        }
+        if (type == long.class) {
+            return 'J';
+        }
+        if (type == boolean.class) {
+            return 'Z';
+        }
+        return 'L';
+    }
+
+
+    /**
+     * Make the property name for what follows the "get", "is", or "set" of an
+     * accessor's name. The first letter is made lowercase unless the second
+     * letter is also uppercase, so "getName" gives "name", but "getURL" gives
+     * "URL".
+     * @param key The rest of the accessor's name.
+     * @return The property name, or null if the key does not begin with an
+     * uppercase letter.
+     */
+    static String propertyKey(String key) {
+        if (key.length() == 0 || !Character.isUpperCase(key.charAt(0))) {
+            return null;
+        }
+        if (key.length() == 1) {
+            key = key.toLowerCase();
+        } else if (!Character.isUpperCase(key.charAt(1))) {
+            key = key.substring(0, 1).toLowerCase() +
+                key.substring(1);
+        }
+        return key;
+    }
+
+
+    /**
+     * Make the property name for a method name.
+     * @param name A method name.
+     * @return The property name, or null if the method is not a getter.
+     */
+    private static String propertyName(String name) {
+        String key;
+        if (name.startsWith("get")) {
+            if ("getClass".equals(name) ||
+                    "getDeclaringClass".equals(name)) {
+                return null;
+            }
+            key = name.substring(3);
+        } else if (name.startsWith("is")) {
+            key = name.substring(2);
+        } else {
+            return null;
+        }
+        return propertyKey(key);
+    }
+
+
+    /**
+     * Write a bean as JSON text, as new JSONObject(bean).write(writer) would,
+     * but without making the JSONObject or boxing primitive values.
+     * Properties whose getters return null or throw are left out.
+     * <p>
+     * Warning: This method assumes that the data structure is acyclical.
+     * @param writer The writer.
+     * @param bean An instance of the class.
+     * @throws JSONException If a property is a non-finite number.
+     * @throws IOException
+     */
+    void write(Writer writer, Object bean) throws JSONException, IOException {
+        boolean commanate = false;
+        writer.write('{');
+        for (int i = 0; i < this.names.length; i += 1) {
+            MethodHandle[] handles = this.typedGetters[i];
+            char kind = 0;
+            double d = 0;
+            float f = 0;
+            long j = 0;
+            Object o = null;
+            boolean z = false;
+
+// Use the last getter that returns a value, as get does.
+
+            for (int k = handles.length - 1; k >= 0 && kind == 0; k -= 1) {
+                MethodHandle getter = handles[k];
+                char c = this.kinds[i][k];
+                try {
+                    switch (c) {
+                    case 'D':
+                        d = (double)getter.invokeExact(bean);
+                        break;
+                    case 'F':
+                        f = (float)getter.invokeExact(bean);
+                        break;
+                    case 'I':
+                        j = (int)getter.invokeExact(bean);
+                        break;
+                    case 'J':
+                        j = (long)getter.invokeExact(bean);
+                        break;
+                    case 'Z':
+                        z = (boolean)getter.invokeExact(bean);
+                        break;
+                    default:
+                        o = (Object)getter.invokeExact(bean);
+                        if (o == null) {
+                            continue;
+                        }
+                    }
+                    kind = c;
+                } catch (Throwable ignore) {
+                }
+            }
+            if (kind == 0) {
+                continue;
+            }
+            if (commanate) {
+                writer.write(',');
+            }
+            JSONObject.writeKey(writer, this.names[i]);
+            writer.write(':');
+            switch (kind) {
+            case 'D':
+                if (Double.isInfinite(d) || Double.isNaN(d)) {
+                    JSONObject.testValidity(Double.valueOf(d));
+                }
+                JSONObject.writeDouble(writer, d);
+                break;
+            case 'F':
+                if (Float.isInfinite(f) || Float.isNaN(f)) {
+                    JSONObject.testValidity(Float.valueOf(f));
+                }
+                JSONObject.writeFloat(writer, f);
+                break;
+            case 'I':
+            case 'J':
+                writer.write(Long.toString(j));
+                break;
+            case 'Z':
+                writer.write(z ? "true" : "false");
+                break;
+            default:
+                writeValue(writer, o);
+            }
+            commanate = true;
+        }
+        writer.write('}');
+    }
+
+
+    /**
+     * Write a value as JSON text, as JSONObject.wrap would represent it, but
+     * writing collections, maps, arrays, and beans directly instead of making
+     * JSONArrays and JSONObjects of them.
+     * @param writer The writer.
+     * @param value A value, not null.
+     * @throws JSONException If the value is or contains a non-finite number.
+     * @throws IOException
+     */
+    static void writeValue(Writer writer, Object value)
+            throws JSONException, IOException {
+        if (value instanceof String) {
+            JSONObject.quote((String)value, writer);
+        } else if (value instanceof JSONObject || value instanceof JSONArray ||
+                value instanceof Number || value instanceof Boolean ||
+                value instanceof JSONString || value instanceof Character ||
+                JSONObject.NULL.equals(value)) {
+            JSONObject.writeValue(writer, value, 0, 0);
+        } else if (value instanceof Collection) {
+            Iterator iter = ((Collection)value).iterator();
+            writer.write('[');
+            boolean commanate = false;
+            while (iter.hasNext()) {
+                Object element = iter.next();
+                if (commanate) {
+                    writer.write(',');
+                }
+                if (element == null) {
+                    writer.write("null");
+                } else {
+                    writeValue(writer, element);
+                }
+                commanate = true;
+            }
+            writer.write(']');
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            writer.write('[');
+            for (int i = 0; i < length; i += 1) {
+                Object element = Array.get(value, i);
+                if (i > 0) {
+                    writer.write(',');
+                }
+                if (element == null) {
+                    writer.write("null");
+                } else {
+                    writeValue(writer, element);
+                }
+            }
+            writer.write(']');
+        } else if (value instanceof Map) {
+            if (hasNullKey((Map)value)) {
+                writer.write("null");
+                return;
+            }
+            Iterator iter = ((Map)value).entrySet().iterator();
+            writer.write('{');
+            boolean commanate = false;
+            while (iter.hasNext()) {
+                Map.Entry e = (Map.Entry)iter.next();
+                Object element = e.getValue();
+                if (element != null) {
+                    if (commanate) {
+                        writer.write(',');
+                    }
+                    JSONObject.writeKey(writer, String.valueOf(e.getKey()));
+                    writer.write(':');
+                    writeValue(writer, element);
+                    commanate = true;
+                }
+            }
+            writer.write('}');
+        } else {
+            ClassInfo info = forClass(value.getClass());
+            if (info.bean) {
+                info.write(writer, value);
+            } else {
+                JSONObject.quote(value.toString(), writer);
+            }
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package org.json;
+
+/*
+Copyright (c) 2013 JSON.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+The Software shall be used for Good, not Evil.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.math.BigInteger;
+
+/**
+ * DoubleFormatter writes the shortest decimal that reads back as the same
+ * double (or float), directly into a char array, without making Strings.
+ * It uses Raffaello Giulietti's Schubfach algorithm. When several decimals
+ * of the shortest length round to the value, the closest one is chosen.
+ * <p>
+ * The text has the layout of Double.toString, with the trailing zeros and
+ * decimal point that JSONObject.numberToString used to shave off already
+ * removed: values from 0.001 up to but not including 10,000,000 are written
+ * in plain notation, such as <code>0.25</code> or <code>1500</code>, and other
+ * values in computerized scientific notation, such as <code>1.0E-5</code> or
+ * <code>6.02214076E23</code>.
+ * @author JSON.org
+ * @version 2013-01-24
+ */
+final class DoubleFormatter {
+
+    /**
+     * The most characters that a formatted number can take.
+     */
+    static final int maxLength = 26;
+
+    /**
+     * The smallest and largest decimal exponents in the table of powers.
+     */
+    private static final int eMin = -292;
+    private static final int eMax = 324;
+
+    /**
+     * The low 63 bits.
+     */
+    private static final long mask63 = 0x7FFFFFFFFFFFFFFFL;
+
+    /**
+     * For each decimal exponent e from eMin to eMax, g = floor(10^e 2^-r) + 1,
+     * where r is chosen so that 2^125 <= g < 2^126, split into its upper 63
+     * bits and its lower 63 bits.
+     */
+    private static final long g[] = new long[(eMax - eMin + 1) * 2];
+
+    /**
+     * The powers of ten that fit in a long.
+     */
+    private static final long tens[] = new long[19];
+
+    static {
+        long ten = 1;
+        for (int i = 0; i < tens.length; i += 1) {
+            tens[i] = ten;
+            ten *= 10;
+        }
+        for (int e = eMin; e <= eMax; e += 1) {
+            int r = flog2pow10(e) - 125;
+            BigInteger numerator = e >= 0
+                ? BigInteger.TEN.pow(e)
+                : BigInteger.ONE;
+            BigInteger denominator = e < 0
+                ? BigInteger.TEN.pow(-e)
+                : BigInteger.ONE;
+            if (r < 0) {
+                numerator = numerator.shiftLeft(-r);
+            } else {
+                denominator = denominator.shiftLeft(r);
+            }
+            BigInteger gg = numerator.divide(denominator).add(BigInteger.ONE);
+            g[(e - eMin) * 2] = gg.shiftRight(63).longValue();
+            g[(e - eMin) * 2 + 1] = gg.longValue() & mask63;
+        }
+    }
+
+
+    private DoubleFormatter() {
+    }
+
+
+    /**
+     * Write a decimal f * 10^e.
+     * @param f The digits, a positive number.
+     * @param e The exponent.
+     * @param buf The array to write into.
+     * @param pos The position in the array to start at.
+     * @return The position after the last character.
+     */
+    private static int digits(long f, int e, char[] buf, int pos) {
+        while (f % 10 == 0) {
+            f /= 10;
+            e += 1;
+        }
+        int n = 1;
+        while (n < tens.length && f >= tens[n]) {
+            n += 1;
+        }
+        int exponent = e + n - 1;
+        if (exponent >= -3 && exponent < 7) {
+            if (exponent < 0) {
+                buf[pos] = '0';
+                buf[pos + 1] = '.';
+                pos += 2;
+                for (int i = exponent + 1; i < 0; i += 1) {
+                    buf[pos] = '0';
+                    pos += 1;
+                }
+                return fill(f, n, buf, pos);
+            }
+            int point = exponent + 1;
+            if (n <= point) {
+                pos = fill(f, n, buf, pos);
+                for (int i = n; i < point; i += 1) {
+                    buf[pos] = '0';
+                    pos += 1;
+                }
+                return pos;
+            }
+            fill(f, n, buf, pos + 1);
+            System.arraycopy(buf, pos + 1, buf, pos, point);
+            buf[pos + point] = '.';
+            return pos + n + 1;
+        }
+        fill(f, n, buf, pos + 1);
+        buf[pos] = buf[pos + 1];
+        buf[pos + 1] = '.';
+        if (n == 1) {
+            buf[pos + 2] = '0';
+            pos += 3;
+        } else {
+            pos += n + 1;
+        }
+        buf[pos] = 'E';
+        pos += 1;
+        if (exponent < 0) {
+            buf[pos] = '-';
+            pos += 1;
+            exponent = -exponent;
+        }
+        if (exponent >= 100) {
+            buf[pos] = (char)('0' + exponent / 100);
+            pos += 1;
+        }
+        if (exponent >= 10) {
+            buf[pos] = (char)('0' + exponent / 10 % 10);
+            pos += 1;
+        }
+        buf[pos] = (char)('0' + exponent % 10);
+        return pos + 1;
+    }
+
+
+    /**
+     * Write the digits of a number.
+     * @param f A positive number.
+     * @param n The number of digits in f.
+     * @return The position after the last digit.
+     */
+    private static int fill(long f, int n, char[] buf, int pos) {
+        int end = pos + n;
+        for (int i = end - 1; i >= pos; i -= 1) {
+            buf[i] = (char)('0' + f % 10);
+            f /= 10;
+        }
+        return end;
+    }
+
+
+    /**
+     * floor(log10(2^q)), for |q| <= 5456721.
+     */
+    private static int flog10pow2(int q) {
+        return (int)((q * 661971961083L) >> 41);
+    }
+
+
+    /**
+     * floor(log10(3/4 2^q)), for |q| <= 5456721.
+     */
+    private static int flog10threeQuartersPow2(int q) {
+        return (int)((q * 661971961083L - 274743187321L) >> 41);
+    }
+
+
+    /**
+     * floor(log2(10^e)), for |e| <= 1838394.
+     */
+    private static int flog2pow10(int e) {
+        return (int)((e * 913124641741L) >> 38);
+    }
+
+
+    /**
+     * Write a finite double.
+     * @param v A finite double.
+     * @param buf The array to write into. There must be room for
+     *  <code>maxLength</code> characters.
+     * @param pos The position in the array to start at.
+     * @return The position after the last character.
+     */
+    static int format(double v, char[] buf, int pos) {
+        long bits = Double.doubleToRawLongBits(v);
+        if (bits < 0) {
+            buf[pos] = '-';
+            pos += 1;
+        }
+        long t = bits & 0xFFFFFFFFFFFFFL;
+        int bq = (int)(bits >>> 52) & 0x7FF;
+        if (bq != 0) {
+            int mq = 1075 - bq;
+            long c = (1L << 52) | t;
+            if (0 < mq && mq < 53) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    return digits(f, 0, buf, pos);
+                }
+            }
+            return toDecimal(-mq, c, 0, t != 0 || bq == 1, buf, pos);
+        }
+        if (t != 0) {
+            return t < 3
+                ? toDecimal(-1074, 10 * t, -1, true, buf, pos)
+                : toDecimal(-1074, t, 0, true, buf, pos);
+        }
+        buf[pos] = '0';
+        return pos + 1;
+    }
+
+
+    /**
+     * Write a finite float.
+     * @param v A finite float.
+     * @param buf The array to write into. There must be room for
+     *  <code>maxLength</code> characters.
+     * @param pos The position in the array to start at.
+     * @return The position after the last character.
+     */
+    static int format(float v, char[] buf, int pos) {
+        int bits = Float.floatToRawIntBits(v);
+        if (bits < 0) {
+            buf[pos] = '-';
+            pos += 1;
+        }
+        int t = bits & 0x7FFFFF;
+        int bq = (bits >>> 23) & 0xFF;
+        if (bq != 0) {
+            int mq = 150 - bq;
+            int c = (1 << 23) | t;
+            if (0 < mq && mq < 24) {
+                int f = c >> mq;
+                if (f << mq == c) {
+                    return digits(f, 0, buf, pos);
+                }
+            }
+            return toDecimal(-mq, c, 0, t != 0 || bq == 1, buf, pos);
+        }
+        if (t != 0) {
+            return t < 8
+                ? toDecimal(-149, 10 * t, -1, true, buf, pos)
+                : toDecimal(-149, t, 0, true, buf, pos);
+        }
+        buf[pos] = '0';
+        return pos + 1;
+    }
+
+
+    /**
+     * The high 64 bits of the 128 bit product of two non-negative longs.
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >>> 32;
+        long x0 = x & 0xFFFFFFFFL;
+        long y1 = y >>> 32;
+        long y0 = y & 0xFFFFFFFFL;
+        long p01 = x0 * y1;
+        long middle = x1 * y0 + ((x0 * y0) >>> 32) + (p01 & 0xFFFFFFFFL);
+        return x1 * y1 + (middle >>> 32) + (p01 >>> 32);
+    }
+
+
+    /**
+     * Multiply by g and round to odd: the result is the integer part of
+     * g cp 2^-127, with its lowest bit set if the fraction is not zero.
+     */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (((z & mask63) + mask63) >>> 63);
+    }
+
+
+    /**
+     * Format a finite double as a String.
+     * @param v A finite double.
+     * @return The shortest decimal that reads back as v.
+     */
+    static String toString(double v) {
+        char[] buf = new char[maxLength];
+        return new String(buf, 0, format(v, buf, 0));
+    }
+
+
+    /**
+     * Format a finite float as a String.
+     * @param v A finite float.
+     * @return The shortest decimal that reads back as v.
+     */
+    static String toString(float v) {
+        char[] buf = new char[maxLength];
+        return new String(buf, 0, format(v, buf, 0));
+    }
+
+
+    /**
+     * Find and write the shortest decimal in the rounding interval of
+     * c 2^q, preferring the one closest to it.
+     * @param q The binary exponent.
+     * @param c The significand.
+     * @param dk The adjustment to the decimal exponent, -1 if c was
+     *  multiplied by 10 to make a tiny subnormal precise enough.
+     * @param symmetric false if the value is the smallest significand of its
+     *  binade, so that the interval below it is half as wide.
+     * @return The position after the last character.
+     */
+    private static int toDecimal(int q, long c, int dk, boolean symmetric,
+            char[] buf, int pos) {
+        int out = (int)c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (symmetric) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        int i = (-k - eMin) * 2;
+        long g1 = g[i];
+        long g0 = g[i + 1];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+        long s = vb >> 2;
+        if (s >= 100) {
+
+// See if a decimal with one digit fewer than s is in the interval.
+
+            long sp10 = 10 * multiplyHigh(s, 115292150460684698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return digits(upin ? sp10 : tp10, k, buf, pos);
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return digits(uin ? s : t, k + dk, buf, pos);
+        }
+        long cmp = vb - ((s + t) << 1);
+        return digits(cmp < 0 || (cmp == 0 && (s & 1) == 0) ? s : t, k + dk,
+                buf, pos);
+    }
+}
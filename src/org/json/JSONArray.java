@@ -25,7 +25,7 @@ SOFTWARE.
 */
 
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
@@ -83,16 +83,55 @@ public class JSONArray {
 
 
     /**
-     * The arrayList where the JSONArray's properties are kept.
+     * How the JSONArray's values are kept. Values:
+     * 'd' (all Doubles, in myDoubles),
+     * 'i' (all Integers, in myInts),
+     * 'l' (all Longs, in myLongs),
+     * 'n' (no values yet),
+     * 'o' (values of any type, in myArrayList).
+     * An array of numbers of one type is kept in a primitive array, which
+     * takes much less memory than the boxed values. The first value of a
+     * different type moves all of the values into myArrayList.
      */
-    private final ArrayList myArrayList;
+    private char kind;
+
+
+    /**
+     * The arrayList where the JSONArray's properties are kept, if they are
+     * not all of one numeric type.
+     */
+    private ArrayList myArrayList;
+
+
+    /**
+     * The values, if they are all Doubles. Only finite values are kept here.
+     */
+    private double[] myDoubles;
+
+
+    /**
+     * The values, if they are all Integers.
+     */
+    private int[] myInts;
+
+
+    /**
+     * The values, if they are all Longs.
+     */
+    private long[] myLongs;
+
+
+    /**
+     * The number of values in the primitive array, or 0 if there is none.
+     */
+    private int mySize;
 
 
     /**
      * Construct an empty JSONArray.
      */
     public JSONArray() {
-        this.myArrayList = new ArrayList();
+        this.kind = 'n';
     }
 
     /**
@@ -110,10 +149,10 @@ public class JSONArray {
             for (;;) {
                 if (x.nextClean() == ',') {
                     x.back();
-                    this.myArrayList.add(JSONObject.NULL);
+                    this.add(JSONObject.NULL);
                 } else {
                     x.back();
-                    this.myArrayList.add(x.nextValue());
+                    this.add(x.nextValue());
                 }
                 switch (x.nextClean()) {
                 case ';':
@@ -150,11 +189,11 @@ public class JSONArray {
      * @param collection     A Collection.
      */
     public JSONArray(Collection collection) {
-        this.myArrayList = new ArrayList();
+        this();
         if (collection != null) {
             Iterator iter = collection.iterator();
             while (iter.hasNext()) {
-                this.myArrayList.add(JSONObject.wrap(iter.next()));
+                this.add(JSONObject.wrap(iter.next()));
             }
         }
     }
@@ -178,6 +217,223 @@ public class JSONArray {
     }
 
 
+    /**
+     * Append a value, keeping it in a primitive array if it has the same
+     * numeric type as the values already there.
+     * @param value An object value.
+     */
+    private void add(Object value) {
+        switch (this.kind) {
+        case 'n':
+            if (value instanceof Integer) {
+                this.addInt(((Integer)value).intValue());
+                return;
+            }
+            if (value instanceof Long) {
+                this.addLong(((Long)value).longValue());
+                return;
+            }
+            if (isFinite(value)) {
+                this.addDouble(((Double)value).doubleValue());
+                return;
+            }
+            this.kind = 'o';
+            this.myArrayList = new ArrayList();
+            break;
+        case 'd':
+            if (isFinite(value)) {
+                this.addDouble(((Double)value).doubleValue());
+                return;
+            }
+            this.promote();
+            break;
+        case 'i':
+            if (value instanceof Integer) {
+                this.addInt(((Integer)value).intValue());
+                return;
+            }
+            this.promote();
+            break;
+        case 'l':
+            if (value instanceof Long) {
+                this.addLong(((Long)value).longValue());
+                return;
+            }
+            this.promote();
+            break;
+        }
+        this.myArrayList.add(value);
+    }
+
+
+    /**
+     * Append a double to myDoubles. The kind must be 'd' or 'n'.
+     * @param value A finite double.
+     */
+    private void addDouble(double value) {
+        if (this.kind == 'n') {
+            this.kind = 'd';
+            this.myDoubles = new double[10];
+        } else if (this.mySize == this.myDoubles.length) {
+            double[] grown = new double[this.mySize + (this.mySize >> 1) + 1];
+            System.arraycopy(this.myDoubles, 0, grown, 0, this.mySize);
+            this.myDoubles = grown;
+        }
+        this.myDoubles[this.mySize] = value;
+        this.mySize += 1;
+    }
+
+
+    /**
+     * Append an int to myInts. The kind must be 'i' or 'n'.
+     * @param value An int.
+     */
+    private void addInt(int value) {
+        if (this.kind == 'n') {
+            this.kind = 'i';
+            this.myInts = new int[10];
+        } else if (this.mySize == this.myInts.length) {
+            int[] grown = new int[this.mySize + (this.mySize >> 1) + 1];
+            System.arraycopy(this.myInts, 0, grown, 0, this.mySize);
+            this.myInts = grown;
+        }
+        this.myInts[this.mySize] = value;
+        this.mySize += 1;
+    }
+
+
+    /**
+     * Append a long to myLongs. The kind must be 'l' or 'n'.
+     * @param value A long.
+     */
+    private void addLong(long value) {
+        if (this.kind == 'n') {
+            this.kind = 'l';
+            this.myLongs = new long[10];
+        } else if (this.mySize == this.myLongs.length) {
+            long[] grown = new long[this.mySize + (this.mySize >> 1) + 1];
+            System.arraycopy(this.myLongs, 0, grown, 0, this.mySize);
+            this.myLongs = grown;
+        }
+        this.myLongs[this.mySize] = value;
+        this.mySize += 1;
+    }
+
+
+    /**
+     * Append the values of another JSONArray, as if each were added in turn.
+     * Values of the same kind are copied in bulk. The other array should not
+     * be used afterward, since this array may take over its storage.
+     * @param other A JSONArray.
+     */
+    void append(JSONArray other) {
+        if (this.kind == 'n') {
+            this.kind = other.kind;
+            this.myArrayList = other.myArrayList;
+            this.myDoubles = other.myDoubles;
+            this.myInts = other.myInts;
+            this.myLongs = other.myLongs;
+            this.mySize = other.mySize;
+            return;
+        }
+        int size = this.mySize + other.mySize;
+        switch (this.kind == other.kind ? this.kind : 'x') {
+        case 'd':
+            double[] doubles = new double[size];
+            System.arraycopy(this.myDoubles, 0, doubles, 0, this.mySize);
+            System.arraycopy(other.myDoubles, 0, doubles, this.mySize,
+                other.mySize);
+            this.myDoubles = doubles;
+            break;
+        case 'i':
+            int[] ints = new int[size];
+            System.arraycopy(this.myInts, 0, ints, 0, this.mySize);
+            System.arraycopy(other.myInts, 0, ints, this.mySize,
+                other.mySize);
+            this.myInts = ints;
+            break;
+        case 'l':
+            long[] longs = new long[size];
+            System.arraycopy(this.myLongs, 0, longs, 0, this.mySize);
+            System.arraycopy(other.myLongs, 0, longs, this.mySize,
+                other.mySize);
+            this.myLongs = longs;
+            break;
+        case 'o':
+            this.myArrayList.addAll(other.myArrayList);
+            return;
+        default:
+            for (int i = 0; i < other.length(); i += 1) {
+                this.add(other.opt(i));
+            }
+            return;
+        }
+        this.mySize = size;
+    }
+
+
+    /**
+     * Determine if a value is a Double that can be kept in myDoubles.
+     * @param value An object value.
+     * @return true if the value is a finite Double.
+     */
+    private static boolean isFinite(Object value) {
+        return value instanceof Double &&
+            !((Double)value).isInfinite() && !((Double)value).isNaN();
+    }
+
+
+    /**
+     * Move the values from the primitive array, if there is one, into
+     * myArrayList.
+     */
+    private void promote() {
+        ArrayList list = new ArrayList(this.mySize + (this.mySize >> 1) + 1);
+        for (int i = 0; i < this.mySize; i += 1) {
+            list.add(this.opt(i));
+        }
+        this.kind = 'o';
+        this.myArrayList = list;
+        this.myDoubles = null;
+        this.myInts = null;
+        this.myLongs = null;
+        this.mySize = 0;
+    }
+
+
+    /**
+     * Replace the value at an index that is less than the length.
+     * @param index The subscript.
+     * @param value An object value.
+     */
+    private void set(int index, Object value) {
+        switch (this.kind) {
+        case 'd':
+            if (isFinite(value)) {
+                this.myDoubles[index] = ((Double)value).doubleValue();
+                return;
+            }
+            break;
+        case 'i':
+            if (value instanceof Integer) {
+                this.myInts[index] = ((Integer)value).intValue();
+                return;
+            }
+            break;
+        case 'l':
+            if (value instanceof Long) {
+                this.myLongs[index] = ((Long)value).longValue();
+                return;
+            }
+            break;
+        }
+        if (this.kind != 'o') {
+            this.promote();
+        }
+        this.myArrayList.set(index, value);
+    }
+
+
     /**
      * Get the object value associated with an index.
      * @param index
@@ -227,6 +483,16 @@ public class JSONArray {
      *  be converted to a number.
      */
     public double getDouble(int index) throws JSONException {
+        if (index >= 0 && index < this.mySize) {
+            switch (this.kind) {
+            case 'd':
+                return this.myDoubles[index];
+            case 'i':
+                return this.myInts[index];
+            case 'l':
+                return this.myLongs[index];
+            }
+        }
         Object object = this.get(index);
         try {
             return object instanceof Number
@@ -247,6 +513,16 @@ public class JSONArray {
      * @throws   JSONException If the key is not found or if the value is not a number.
      */
     public int getInt(int index) throws JSONException {
+        if (index >= 0 && index < this.mySize) {
+            switch (this.kind) {
+            case 'd':
+                return (int)this.myDoubles[index];
+            case 'i':
+                return this.myInts[index];
+            case 'l':
+                return (int)this.myLongs[index];
+            }
+        }
         Object object = this.get(index);
         try {
             return object instanceof Number
@@ -302,6 +578,16 @@ public class JSONArray {
      *  be converted to a number.
      */
     public long getLong(int index) throws JSONException {
+        if (index >= 0 && index < this.mySize) {
+            switch (this.kind) {
+            case 'd':
+                return (long)this.myDoubles[index];
+            case 'i':
+                return this.myInts[index];
+            case 'l':
+                return this.myLongs[index];
+            }
+        }
         Object object = this.get(index);
         try {
             return object instanceof Number
@@ -355,7 +641,7 @@ public class JSONArray {
             if (i > 0) {
                 sb.append(separator);
             }
-            sb.append(JSONObject.valueToString(this.myArrayList.get(i)));
+            sb.append(JSONObject.valueToString(this.opt(i)));
         }
         return sb.toString();
     }
@@ -367,7 +653,7 @@ public class JSONArray {
      * @return The length (or size).
      */
     public int length() {
-        return this.myArrayList.size();
+        return this.kind == 'o' ? this.myArrayList.size() : this.mySize;
     }
 
 
@@ -378,9 +664,19 @@ public class JSONArray {
      *              object at that index.
      */
     public Object opt(int index) {
-        return (index < 0 || index >= this.length())
-            ? null
-            : this.myArrayList.get(index);
+        if (index < 0 || index >= this.length()) {
+            return null;
+        }
+        switch (this.kind) {
+        case 'd':
+            return Double.valueOf(this.myDoubles[index]);
+        case 'i':
+            return Integer.valueOf(this.myInts[index]);
+        case 'l':
+            return Long.valueOf(this.myLongs[index]);
+        default:
+            return this.myArrayList.get(index);
+        }
     }
 
 
@@ -593,6 +889,13 @@ public class JSONArray {
      * @return this.
      */
     public JSONArray put(double value) throws JSONException {
+        if (this.kind == 'n' || this.kind == 'd') {
+            if (Double.isInfinite(value) || Double.isNaN(value)) {
+                JSONObject.testValidity(Double.valueOf(value));
+            }
+            this.addDouble(value);
+            return this;
+        }
         Double d = new Double(value);
         JSONObject.testValidity(d);
         this.put(d);
@@ -607,6 +910,10 @@ public class JSONArray {
      * @return this.
      */
     public JSONArray put(int value) {
+        if (this.kind == 'n' || this.kind == 'i') {
+            this.addInt(value);
+            return this;
+        }
         this.put(new Integer(value));
         return this;
     }
@@ -619,6 +926,10 @@ public class JSONArray {
      * @return this.
      */
     public JSONArray put(long value) {
+        if (this.kind == 'n' || this.kind == 'l') {
+            this.addLong(value);
+            return this;
+        }
         this.put(new Long(value));
         return this;
     }
@@ -644,7 +955,7 @@ public class JSONArray {
      * @return this.
      */
     public JSONArray put(Object value) {
-        this.myArrayList.add(value);
+        this.add(value);
         return this;
     }
 
@@ -758,7 +1069,7 @@ public class JSONArray {
             throw new JSONException("JSONArray[" + index + "] not found.");
         }
         if (index < this.length()) {
-            this.myArrayList.set(index, value);
+            this.set(index, value);
         } else {
             while (index != this.length()) {
                 this.put(JSONObject.NULL);
@@ -777,7 +1088,22 @@ public class JSONArray {
      */
     public Object remove(int index) {
         Object o = this.opt(index);
-        this.myArrayList.remove(index);
+        if (this.kind == 'o') {
+            this.myArrayList.remove(index);
+        } else {
+            if (index < 0 || index >= this.mySize) {
+                throw new IndexOutOfBoundsException("Index " + index +
+                    " out of bounds for length " + this.mySize);
+            }
+            Object array = this.kind == 'd'
+                ? (Object)this.myDoubles
+                : this.kind == 'i'
+                ? (Object)this.myInts
+                : (Object)this.myLongs;
+            System.arraycopy(array, index + 1, array, index,
+                    this.mySize - index - 1);
+            this.mySize -= 1;
+        }
         return o;
     }
 
@@ -835,12 +1161,56 @@ public class JSONArray {
      * @throws JSONException
      */
     public String toString(int indentFactor) throws JSONException {
-        StringWriter sw = new StringWriter();
-        synchronized (sw.getBuffer()) {
-            return this.write(sw, indentFactor, 0).toString();
+        JSONBuffer buffer = new JSONBuffer();
+        try {
+            return this.write(buffer, indentFactor, 0).toString();
+        } finally {
+            buffer.close();
+        }
+    }
+
+    /**
+     * Write the contents of the JSONArray as UTF-8 encoded JSON text to a
+     * stream. For compactness, no whitespace is added. The bytes are encoded
+     * directly, without making a String. The stream is not flushed or closed.
+     * <p>
+     * Warning: This method assumes that the data structure is acyclical.
+     *
+     * @param stream The stream that receives the bytes.
+     * @return The stream.
+     * @throws JSONException
+     */
+    public OutputStream write(OutputStream stream) throws JSONException {
+        return this.write(stream, 0);
+    }
+
+
+    /**
+     * Write the contents of the JSONArray as prettyprinted, UTF-8 encoded JSON
+     * text to a stream. The bytes are encoded directly, without making a
+     * String. The stream is not flushed or closed.
+     * <p>
+     * Warning: This method assumes that the data structure is acyclical.
+     *
+     * @param stream The stream that receives the bytes.
+     * @param indentFactor The number of spaces to add to each level of
+     *  indentation.
+     * @return The stream.
+     * @throws JSONException
+     */
+    public OutputStream write(OutputStream stream, int indentFactor)
+            throws JSONException {
+        UTF8Writer writer = new UTF8Writer(stream);
+        this.write(writer, indentFactor, 0);
+        try {
+            writer.finish();
+        } catch (IOException exception) {
+            throw new JSONException(exception);
         }
+        return stream;
     }
 
+
     /**
      * Write the contents of the JSONArray as JSON text to a writer. For
      * compactness, no whitespace is added.
@@ -854,6 +1224,28 @@ public class JSONArray {
         return this.write(writer, 0, 0);
     }
 
+    /**
+     * Write the value at an index. Values kept in a primitive array are
+     * written without boxing them.
+     */
+    private void writeValue(Writer writer, int index, int indentFactor,
+            int indent) throws JSONException, IOException {
+        switch (this.kind) {
+        case 'd':
+            JSONObject.writeDouble(writer, this.myDoubles[index]);
+            break;
+        case 'i':
+            writer.write(Integer.toString(this.myInts[index]));
+            break;
+        case 'l':
+            writer.write(Long.toString(this.myLongs[index]));
+            break;
+        default:
+            JSONObject.writeValue(writer, this.myArrayList.get(index),
+                    indentFactor, indent);
+        }
+    }
+
     /**
      * Write the contents of the JSONArray as JSON text to a writer. For
      * compactness, no whitespace is added.
@@ -875,8 +1267,7 @@ public class JSONArray {
             writer.write('[');
 
             if (length == 1) {
-                JSONObject.writeValue(writer, this.myArrayList.get(0),
-                        indentFactor, indent);
+                this.writeValue(writer, 0, indentFactor, indent);
             } else if (length != 0) {
                 final int newindent = indent + indentFactor;
 
@@ -888,8 +1279,7 @@ public class JSONArray {
                         writer.write('\n');
                     }
                     JSONObject.indent(writer, newindent);
-                    JSONObject.writeValue(writer, this.myArrayList.get(i),
-                            indentFactor, newindent);
+                    this.writeValue(writer, i, indentFactor, newindent);
                     commanate = true;
                 }
                 if (indentFactor > 0) {
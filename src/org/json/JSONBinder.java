@@ -0,0 +1,1014 @@
+package org.json;
+
+/*
+Copyright (c) 2013 JSON.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+The Software shall be used for Good, not Evil.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * JSONBinder reads JSON text directly into objects of a given class, without
+ * first making JSONObjects and JSONArrays of it. It drives a JSONTokener
+ * itself, matching keys against the properties of the class as they are
+ * read and converting each value straight to the property's type, so numbers
+ * and booleans are not boxed and keys are not made into Strings.
+ * <p>
+ * A class is bound as a bean if it has a public constructor with no
+ * parameters. Its properties are set by public methods named "set" followed
+ * by an uppercase letter that take one parameter, and by public fields that
+ * are neither static nor final. Property names are made from setter names as
+ * JSONObject makes them from getter names, so the keys of the text written
+ * for a bean by <code>new JSONObject(bean)</code> or
+ * <code>JSONWriter.bean</code> name its properties. Keys that do not name a
+ * property are skipped, and null values leave properties unset.
+ * <p>
+ * A property can be a primitive or its wrapper, a String, a BigInteger or
+ * BigDecimal, an enum (given by the name of its constant), an array, a
+ * Collection or a Map with String keys (whose elements are bound by the
+ * property's type arguments), another bean, or Object, Number, JSONObject, or
+ * JSONArray, which take whatever <code>JSONTokener.nextValue</code> makes.
+ * Numbers and booleans are converted as JSONObject.getInt, getDouble, and
+ * getBoolean convert them, so quoted numbers are accepted.
+ * <p>
+ * The reflection is done once per class. The results are kept in a
+ * ClassValue, so they are released with the class.
+ * @author JSON.org
+ * @version 2013-01-24
+ */
+public class JSONBinder {
+
+    /**
+     * The Binding of each class that has been bound as a bean.
+     */
+    private static final ClassValue bindings = new ClassValue() {
+        protected Object computeValue(Class klass) {
+            return new Binding(klass);
+        }
+    };
+
+    /**
+     * The type of constructors after they are adapted to return Objects.
+     */
+    private static final MethodType constructorType =
+        MethodType.methodType(Object.class);
+
+
+    /**
+     * Read a value of a class from a JSONTokener.
+     * @param x A JSONTokener positioned at the value.
+     * @param klass The class of the value.
+     * @return An instance of the class, or null if the value is null.
+     * Primitive classes give their wrappers.
+     * @throws JSONException If there is a syntax error, or if the value
+     * cannot be converted to the class.
+     */
+    public static Object bind(JSONTokener x, Class klass)
+            throws JSONException {
+        char c = x.nextClean();
+        int length = unquoted(x, c);
+        if (isNull(x, length)) {
+            return null;
+        }
+        return read(x, c, length, Target.forType(klass));
+    }
+
+
+    /**
+     * Read a value of a class from a JSON text.
+     * @param source A JSON text.
+     * @param klass The class of the value.
+     * @return An instance of the class, or null if the value is null.
+     * Primitive classes give their wrappers.
+     * @throws JSONException If there is a syntax error, or if the value
+     * cannot be converted to the class.
+     */
+    public static Object bind(String source, Class klass)
+            throws JSONException {
+        return bind(new JSONTokener(source), klass);
+    }
+
+
+    /**
+     * Determine if the unquoted text in the tokener's text buffer is null.
+     * @param x The tokener.
+     * @param length The length of the text, or -1 if there is none.
+     * @return true if the text is null.
+     */
+    private static boolean isNull(JSONTokener x, int length) {
+        return length == 4 && x.unquotedValue(length) == JSONObject.NULL;
+    }
+
+
+    /**
+     * Make an object with a constructor that has no parameters.
+     * @param constructor The constructor, or null if the class has none.
+     * @param klass The class.
+     * @return A new instance of the class.
+     * @throws JSONException If the object cannot be made.
+     */
+    private static Object make(MethodHandle constructor, Class klass)
+            throws JSONException {
+        if (constructor == null) {
+            throw new JSONException(klass.getName() +
+                " does not have a public constructor with no parameters.");
+        }
+        try {
+            return (Object)constructor.invokeExact();
+        } catch (Error error) {
+            throw error;
+        } catch (Throwable e) {
+            throw new JSONException(e);
+        }
+    }
+
+
+    /**
+     * Read a value. The first character has been read, and if it began
+     * unquoted text, the text is in the tokener's text buffer.
+     * @param x The tokener.
+     * @param c The first character of the value.
+     * @param length The length of the unquoted text, or -1 if the value is a
+     * quoted string, an array, or an object.
+     * @param target What the value is read as.
+     * @return The value, boxed if it is primitive.
+     * @throws JSONException
+     */
+    private static Object read(JSONTokener x, char c, int length,
+            Target target) throws JSONException {
+        Object value;
+        switch (target.kind) {
+        case 'A':
+            return readArray(x, c, target.element);
+        case 'B':
+            return Byte.valueOf((byte)readLong(x, c, length));
+        case 'C':
+            return Character.valueOf(readChar(x, c, length));
+        case 'D':
+            return Double.valueOf(readDouble(x, c, length));
+        case 'E':
+            String name = readString(x, c, length);
+            try {
+                return Enum.valueOf(target.klass, name);
+            } catch (IllegalArgumentException e) {
+                throw x.syntaxError(target.klass.getName() +
+                    " has no constant " + JSONObject.quote(name));
+            }
+        case 'F':
+            return Float.valueOf((float)readDouble(x, c, length));
+        case 'I':
+            return Integer.valueOf((int)readLong(x, c, length));
+        case 'J':
+            return Long.valueOf(readLong(x, c, length));
+        case 'K':
+            if (c != '[') {
+                throw x.syntaxError("Expected a JSONArray");
+            }
+            Collection collection =
+                (Collection)make(target.constructor, target.klass);
+            readElements(x, target.element, collection);
+            return collection;
+        case 'M':
+            if (c != '{') {
+                throw x.syntaxError("Expected a JSONObject");
+            }
+            return readObject(x, (Map)make(target.constructor, target.klass),
+                null, target.element);
+        case 'N':
+            String number = length < 0
+                ? readString(x, c, length)
+                : new String(x.text(), 0, length);
+            try {
+                return target.klass == BigInteger.class
+                    ? (Object)new BigInteger(number)
+                    : (Object)new BigDecimal(number);
+            } catch (NumberFormatException e) {
+                throw x.syntaxError("Expected a number");
+            }
+        case 'Q':
+            if (c != '{') {
+                throw x.syntaxError("Expected a JSONObject");
+            }
+            Binding binding = (Binding)bindings.get(target.klass);
+            return readObject(x, make(binding.constructor, target.klass),
+                binding, null);
+        case 'S':
+            return Short.valueOf((short)readLong(x, c, length));
+        case 'T':
+            return readString(x, c, length);
+        case 'Z':
+            return Boolean.valueOf(readBoolean(x, c, length));
+        default:
+            if (length >= 0) {
+                value = x.unquotedValue(length);
+            } else if (c == '"' || c == '\'') {
+                value = x.nextString(c);
+            } else {
+                x.back();
+                value = x.nextValue();
+            }
+            if (!target.klass.isInstance(value)) {
+                throw x.syntaxError("Expected " + target.klass.getName());
+            }
+            return value;
+        }
+    }
+
+
+    /**
+     * Read an array into a Java array.
+     * @param x The tokener.
+     * @param c The first character of the value.
+     * @param element What the elements are read as.
+     * @return An array of the element's class.
+     * @throws JSONException
+     */
+    private static Object readArray(JSONTokener x, char c, Target element)
+            throws JSONException {
+        if (c != '[') {
+            throw x.syntaxError("Expected a JSONArray");
+        }
+        if (x.nextClean() == ']') {
+            return Array.newInstance(element.klass, 0);
+        }
+        x.back();
+        int capacity = 8;
+        int count = 0;
+        Object array = Array.newInstance(element.klass, capacity);
+        for (;;) {
+            if (count == capacity) {
+                capacity *= 2;
+                Object grown = Array.newInstance(element.klass, capacity);
+                System.arraycopy(array, 0, grown, 0, count);
+                array = grown;
+            }
+            c = x.nextClean();
+            if (c == ',') {
+                x.back();
+                if (element.klass.isPrimitive()) {
+                    throw x.syntaxError("Missing value");
+                }
+            } else {
+                int length = unquoted(x, c);
+                switch (element.klass.isPrimitive() ? element.kind : 'L') {
+                case 'B':
+                    Array.setByte(array, count, (byte)readLong(x, c, length));
+                    break;
+                case 'C':
+                    Array.setChar(array, count, readChar(x, c, length));
+                    break;
+                case 'D':
+                    Array.setDouble(array, count, readDouble(x, c, length));
+                    break;
+                case 'F':
+                    Array.setFloat(array, count,
+                        (float)readDouble(x, c, length));
+                    break;
+                case 'I':
+                    Array.setInt(array, count, (int)readLong(x, c, length));
+                    break;
+                case 'J':
+                    Array.setLong(array, count, readLong(x, c, length));
+                    break;
+                case 'S':
+                    Array.setShort(array, count,
+                        (short)readLong(x, c, length));
+                    break;
+                case 'Z':
+                    Array.setBoolean(array, count,
+                        readBoolean(x, c, length));
+                    break;
+                default:
+                    if (!isNull(x, length)) {
+                        Array.set(array, count, read(x, c, length, element));
+                    }
+                }
+            }
+            count += 1;
+            switch (x.nextClean()) {
+            case ';':
+            case ',':
+                if (x.nextClean() == ']') {
+                    break;
+                }
+                x.back();
+                continue;
+            case ']':
+                break;
+            default:
+                throw x.syntaxError("Expected a ',' or ']'");
+            }
+            if (count == capacity) {
+                return array;
+            }
+            Object trimmed = Array.newInstance(element.klass, count);
+            System.arraycopy(array, 0, trimmed, 0, count);
+            return trimmed;
+        }
+    }
+
+
+    /**
+     * Read a boolean as JSONObject.getBoolean would.
+     * @param x The tokener.
+     * @param c The first character of the value.
+     * @param length The length of the unquoted text, or -1.
+     * @return The boolean.
+     * @throws JSONException If the value is not a boolean.
+     */
+    private static boolean readBoolean(JSONTokener x, char c, int length)
+            throws JSONException {
+        Object value = null;
+        if (length >= 0) {
+            value = x.unquotedValue(length);
+        } else if (c == '"' || c == '\'') {
+            String string = x.nextString(c);
+            if (string.equalsIgnoreCase("true")) {
+                value = Boolean.TRUE;
+            } else if (string.equalsIgnoreCase("false")) {
+                value = Boolean.FALSE;
+            }
+        }
+        if (value instanceof Boolean) {
+            return ((Boolean)value).booleanValue();
+        }
+        throw x.syntaxError("Expected a Boolean");
+    }
+
+
+    /**
+     * Read a char from a string of one character.
+     * @param x The tokener.
+     * @param c The first character of the value.
+     * @param length The length of the unquoted text, or -1.
+     * @return The char.
+     * @throws JSONException If the value is not one character.
+     */
+    private static char readChar(JSONTokener x, char c, int length)
+            throws JSONException {
+        if (length < 0 && (c == '"' || c == '\'')) {
+            length = x.nextChars(c);
+        }
+        if (length != 1) {
+            throw x.syntaxError("Expected a character");
+        }
+        return x.text()[0];
+    }
+
+
+    /**
+     * Read a double as JSONObject.getDouble would, without boxing it.
+     * @param x The tokener.
+     * @param c The first character of the value.
+     * @param length The length of the unquoted text, or -1.
+     * @return The number.
+     * @throws JSONException If the value is not a number.
+     */
+    private static double readDouble(JSONTokener x, char c, int length)
+            throws JSONException {
+        if (length >= 0) {
+            return x.unquotedDouble(length);
+        }
+        if (c == '"' || c == '\'') {
+            try {
+                return Double.parseDouble(x.nextString(c));
+            } catch (NumberFormatException e) {
+            }
+        }
+        throw x.syntaxError("Expected a number");
+    }
+
+
+    /**
+     * Read the elements of an array into a collection.
+     * @param x The tokener, positioned after the '['.
+     * @param element What the elements are read as.
+     * @param collection The collection.
+     * @throws JSONException
+     */
+    private static void readElements(JSONTokener x, Target element,
+            Collection collection) throws JSONException {
+        if (x.nextClean() == ']') {
+            return;
+        }
+        x.back();
+        for (;;) {
+            char c = x.nextClean();
+            if (c == ',') {
+                x.back();
+                collection.add(null);
+            } else {
+                int length = unquoted(x, c);
+                collection.add(isNull(x, length)
+                    ? null
+                    : read(x, c, length, element));
+            }
+            switch (x.nextClean()) {
+            case ';':
+            case ',':
+                if (x.nextClean() == ']') {
+                    return;
+                }
+                x.back();
+                break;
+            case ']':
+                return;
+            default:
+                throw x.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+
+    /**
+     * Read a long as JSONObject.getLong would, without boxing it.
+     * @param x The tokener.
+     * @param c The first character of the value.
+     * @param length The length of the unquoted text, or -1.
+     * @return The number.
+     * @throws JSONException If the value is not a number.
+     */
+    private static long readLong(JSONTokener x, char c, int length)
+            throws JSONException {
+        if (length >= 0) {
+            return x.unquotedLong(length);
+        }
+        if (c == '"' || c == '\'') {
+            try {
+                return Long.parseLong(x.nextString(c));
+            } catch (NumberFormatException e) {
+            }
+        }
+        throw x.syntaxError("Expected a number");
+    }
+
+
+    /**
+     * Read the members of an object into a map or a bean. The syntax is the
+     * same as for JSONObject(JSONTokener).
+     * @param x The tokener, positioned after the '{'.
+     * @param object A Map, or a bean.
+     * @param binding The binding of the bean, or null if the object is a Map.
+     * @param element What the values of a Map are read as.
+     * @return The object.
+     * @throws JSONException
+     */
+    private static Object readObject(JSONTokener x, Object object,
+            Binding binding, Target element) throws JSONException {
+        for (;;) {
+            char c = x.nextClean();
+            String key = null;
+            int length = -1;
+            switch (c) {
+            case 0:
+                throw x.syntaxError("A JSONObject text must end with '}'");
+            case '}':
+                return object;
+            case '"':
+            case '\'':
+                length = x.nextChars(c);
+                break;
+            default:
+                x.back();
+                key = x.nextValue().toString();
+            }
+            Property property = null;
+            if (binding != null) {
+                property = key == null
+                    ? binding.find(x.text(), length)
+                    : binding.find(key.toCharArray(), key.length());
+            } else if (key == null) {
+                key = new String(x.text(), 0, length);
+            }
+
+// The key is followed by ':'. We will also tolerate '=' or '=>'.
+
+            c = x.nextClean();
+            if (c == '=') {
+                if (x.next() != '>') {
+                    x.back();
+                }
+            } else if (c != ':') {
+                throw x.syntaxError("Expected a ':' after a key");
+            }
+            if (binding == null) {
+                c = x.nextClean();
+                length = unquoted(x, c);
+                ((Map)object).put(key, isNull(x, length)
+                    ? null
+                    : read(x, c, length, element));
+            } else if (property == null) {
+                skip(x);
+            } else {
+                property.set(x, object);
+            }
+
+// Pairs are separated by ','. We will also tolerate ';'.
+
+            switch (x.nextClean()) {
+            case ';':
+            case ',':
+                if (x.nextClean() == '}') {
+                    return object;
+                }
+                x.back();
+                break;
+            case '}':
+                return object;
+            default:
+                throw x.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+
+    /**
+     * Read a string. Unquoted text is converted as nextValue would convert
+     * it, and then made into a string.
+     * @param x The tokener.
+     * @param c The first character of the value.
+     * @param length The length of the unquoted text, or -1.
+     * @return The string.
+     * @throws JSONException If the value is an array or an object.
+     */
+    private static String readString(JSONTokener x, char c, int length)
+            throws JSONException {
+        if (length >= 0) {
+            return x.unquotedValue(length).toString();
+        }
+        if (c == '"' || c == '\'') {
+            return x.nextString(c);
+        }
+        throw x.syntaxError("Expected a string");
+    }
+
+
+    /**
+     * Skip a value without making anything of it.
+     * @param x The tokener, positioned at the value.
+     * @throws JSONException If there is a syntax error.
+     */
+    private static void skip(JSONTokener x) throws JSONException {
+        char c = x.nextClean();
+        switch (c) {
+        case '"':
+        case '\'':
+            x.nextChars(c);
+            return;
+        case '[':
+            if (x.nextClean() == ']') {
+                return;
+            }
+            x.back();
+            for (;;) {
+                if (x.nextClean() != ',') {
+                    x.back();
+                    skip(x);
+                } else {
+                    x.back();
+                }
+                switch (x.nextClean()) {
+                case ';':
+                case ',':
+                    if (x.nextClean() == ']') {
+                        return;
+                    }
+                    x.back();
+                    break;
+                case ']':
+                    return;
+                default:
+                    throw x.syntaxError("Expected a ',' or ']'");
+                }
+            }
+        case '{':
+            for (;;) {
+                switch (x.nextClean()) {
+                case 0:
+                    throw x.syntaxError(
+                        "A JSONObject text must end with '}'");
+                case '}':
+                    return;
+                default:
+                    x.back();
+                    skip(x);
+                }
+                c = x.nextClean();
+                if (c == '=') {
+                    if (x.next() != '>') {
+                        x.back();
+                    }
+                } else if (c != ':') {
+                    throw x.syntaxError("Expected a ':' after a key");
+                }
+                skip(x);
+                switch (x.nextClean()) {
+                case ';':
+                case ',':
+                    if (x.nextClean() == '}') {
+                        return;
+                    }
+                    x.back();
+                    break;
+                case '}':
+                    return;
+                default:
+                    throw x.syntaxError("Expected a ',' or '}'");
+                }
+            }
+        default:
+            x.nextUnquoted(c);
+        }
+    }
+
+
+    /**
+     * Read the rest of a value's unquoted text into the tokener's text
+     * buffer, if it is not a quoted string, an array, or an object.
+     * @param x The tokener.
+     * @param c The first character of the value.
+     * @return The length of the text, or -1 if there is none.
+     * @throws JSONException If the value is missing.
+     */
+    private static int unquoted(JSONTokener x, char c) throws JSONException {
+        return c == '"' || c == '\'' || c == '[' || c == '{'
+            ? -1
+            : x.nextUnquoted(c);
+    }
+
+
+    /**
+     * A Binding holds the constructor of a bean class and its settable
+     * properties, in a hash table keyed by the characters of their names.
+     */
+    private static final class Binding {
+        final MethodHandle constructor;
+        private final Property[] table;
+
+        Binding(Class klass) {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodHandle constructor = null;
+            try {
+                constructor = lookup.findConstructor(klass,
+                    MethodType.methodType(void.class)).asType(constructorType);
+            } catch (Exception ignore) {
+            }
+            this.constructor = constructor;
+
+// Public fields are found first, so that a setter for the same property
+// replaces its field.
+
+            HashMap properties = new HashMap();
+            Field[] fields = klass.getFields();
+            for (int i = 0; i < fields.length; i += 1) {
+                Field field = fields[i];
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) &&
+                        !Modifier.isFinal(modifiers)) {
+                    try {
+                        properties.put(field.getName(), new Property(
+                            field.getName(), null,
+                            lookup.unreflectSetter(field),
+                            field.getGenericType()));
+                    } catch (Exception ignore) {
+                    }
+                }
+            }
+            Method[] methods = klass.getMethods();
+            for (int i = 0; i < methods.length; i += 1) {
+                Method method = methods[i];
+                String name = method.getName();
+                if (name.startsWith("set") &&
+                        method.getParameterTypes().length == 1 &&
+                        !Modifier.isStatic(method.getModifiers())) {
+                    String key = ClassInfo.propertyKey(name.substring(3));
+                    if (key != null && preferred(klass, method,
+                            (Property)properties.get(key))) {
+                        try {
+                            properties.put(key, new Property(key, method,
+                                lookup.unreflect(method),
+                                method.getGenericParameterTypes()[0]));
+                        } catch (Exception ignore) {
+                        }
+                    }
+                }
+            }
+
+// The table is at most half full, so that probes are short.
+
+            int size = 2;
+            while (size < properties.size() * 2) {
+                size *= 2;
+            }
+            this.table = new Property[size];
+            Iterator iter = properties.values().iterator();
+            while (iter.hasNext()) {
+                Property property = (Property)iter.next();
+                int i = property.hash & (size - 1);
+                while (this.table[i] != null) {
+                    i = (i + 1) & (size - 1);
+                }
+                this.table[i] = property;
+            }
+        }
+
+        Property find(char[] chars, int length) {
+            int hash = 0;
+            for (int i = 0; i < length; i += 1) {
+                hash = 31 * hash + chars[i];
+            }
+            int mask = this.table.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                Property property = this.table[i];
+                if (property == null) {
+                    return null;
+                }
+                if (property.hash == hash && property.matches(chars, length)) {
+                    return property;
+                }
+            }
+        }
+
+// When a property has more than one setter, the one whose parameter is the
+// type of the getter is used. Otherwise the first one found is kept.
+
+        private static boolean preferred(Class klass, Method method,
+                Property property) {
+            if (property == null || property.method == null) {
+                return true;
+            }
+            String suffix = method.getName().substring(3);
+            Class type = null;
+            try {
+                type = klass.getMethod("get" + suffix).getReturnType();
+            } catch (Exception e) {
+                try {
+                    type = klass.getMethod("is" + suffix).getReturnType();
+                } catch (Exception ignore) {
+                }
+            }
+            return type == method.getParameterTypes()[0];
+        }
+    }
+
+
+    /**
+     * A Property is a setter, or a public field with a null method, adapted to take an Object and
+     * the primitive type of its kind, or an Object.
+     */
+    private static final class Property {
+        final int hash;
+        private final char kind;
+        final Method method;
+        private final char[] name;
+        private final MethodHandle setter;
+        private final Target target;
+
+        Property(String name, Method method, MethodHandle handle,
+                Type type) {
+            this.hash = name.hashCode();
+            this.method = method;
+            this.name = name.toCharArray();
+            this.target = Target.forType(type);
+            Class klass = this.target.klass;
+            this.kind = klass.isPrimitive() ? this.target.kind : 'L';
+            this.setter = handle.asType(MethodType.methodType(void.class,
+                Object.class, klass.isPrimitive() ? klass : Object.class));
+        }
+
+        boolean matches(char[] chars, int length) {
+            if (length != this.name.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i += 1) {
+                if (chars[i] != this.name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void set(JSONTokener x, Object bean) throws JSONException {
+            char c = x.nextClean();
+            int length = unquoted(x, c);
+            if (isNull(x, length)) {
+                return;
+            }
+            MethodHandle setter = this.setter;
+            try {
+                switch (this.kind) {
+                case 'B':
+                    setter.invokeExact(bean, (byte)readLong(x, c, length));
+                    break;
+                case 'C':
+                    setter.invokeExact(bean, readChar(x, c, length));
+                    break;
+                case 'D':
+                    setter.invokeExact(bean, readDouble(x, c, length));
+                    break;
+                case 'F':
+                    setter.invokeExact(bean, (float)readDouble(x, c, length));
+                    break;
+                case 'I':
+                    setter.invokeExact(bean, (int)readLong(x, c, length));
+                    break;
+                case 'J':
+                    setter.invokeExact(bean, readLong(x, c, length));
+                    break;
+                case 'S':
+                    setter.invokeExact(bean, (short)readLong(x, c, length));
+                    break;
+                case 'Z':
+                    setter.invokeExact(bean, readBoolean(x, c, length));
+                    break;
+                default:
+                    setter.invokeExact(bean, read(x, c, length, this.target));
+                }
+            } catch (JSONException e) {
+                throw e;
+            } catch (Error error) {
+                throw error;
+            } catch (Throwable e) {
+                throw new JSONException(e);
+            }
+        }
+    }
+
+
+    /**
+     * A Target describes what a value is read as. Its kind is
+     * 'A' (an array), 'B' (byte), 'C' (char), 'D' (double), 'E' (an enum),
+     * 'F' (float), 'I' (int), 'J' (long), 'K' (a Collection), 'M' (a Map),
+     * 'N' (a BigInteger or BigDecimal), 'O' (whatever nextValue makes),
+     * 'Q' (a bean), 'S' (short), 'T' (a String), or 'Z' (boolean). The
+     * primitive kinds are used for both the primitives and their wrappers.
+     */
+    private static final class Target {
+        final MethodHandle constructor;
+        final Target element;
+        final char kind;
+        final Class klass;
+
+        private Target(char kind, Class klass, Target element,
+                MethodHandle constructor) {
+            this.constructor = constructor;
+            this.element = element;
+            this.kind = kind;
+            this.klass = klass;
+        }
+
+        static Target forType(Type type) {
+            if (type instanceof ParameterizedType) {
+                return forClass((Class)((ParameterizedType)type).getRawType(),
+                    ((ParameterizedType)type).getActualTypeArguments());
+            }
+            if (type instanceof GenericArrayType) {
+                Target element = forType(
+                    ((GenericArrayType)type).getGenericComponentType());
+                return new Target('A',
+                    Array.newInstance(element.klass, 0).getClass(), element,
+                    null);
+            }
+            if (type instanceof WildcardType) {
+                return forType(((WildcardType)type).getUpperBounds()[0]);
+            }
+            if (type instanceof TypeVariable) {
+                return forType(((TypeVariable)type).getBounds()[0]);
+            }
+            return forClass((Class)type, null);
+        }
+
+        private static Target forClass(Class klass, Type[] arguments) {
+            char kind = primitiveKind(klass);
+            if (kind != 0) {
+                return new Target(kind, klass, null, null);
+            }
+            if (klass == String.class) {
+                return new Target('T', klass, null, null);
+            }
+            if (klass == BigDecimal.class || klass == BigInteger.class) {
+                return new Target('N', klass, null, null);
+            }
+            if (klass.isEnum()) {
+                return new Target('E', klass, null, null);
+            }
+            if (klass.isArray()) {
+                return new Target('A', klass,
+                    forType(klass.getComponentType()), null);
+            }
+            if (Collection.class.isAssignableFrom(klass)) {
+                Class made = klass.isInterface() ||
+                        Modifier.isAbstract(klass.getModifiers())
+                    ? (SortedSet.class.isAssignableFrom(klass)
+                        ? TreeSet.class
+                        : Set.class.isAssignableFrom(klass)
+                        ? LinkedHashSet.class
+                        : Queue.class.isAssignableFrom(klass)
+                        ? LinkedList.class
+                        : ArrayList.class)
+                    : klass;
+                return new Target('K', klass, forType(
+                    arguments == null ? Object.class : arguments[0]),
+                    constructor(made));
+            }
+            if (Map.class.isAssignableFrom(klass)) {
+                Class made = klass.isInterface() ||
+                        Modifier.isAbstract(klass.getModifiers())
+                    ? (SortedMap.class.isAssignableFrom(klass)
+                        ? TreeMap.class
+                        : LinkedHashMap.class)
+                    : klass;
+                return new Target('M', klass, forType(
+                    arguments == null ? Object.class : arguments[1]),
+                    constructor(made));
+            }
+            if (!klass.isInterface() && ClassInfo.forClass(klass).bean) {
+                return new Target('Q', klass, null, null);
+            }
+            return new Target('O', klass, null, null);
+        }
+
+        private static MethodHandle constructor(Class klass) {
+            try {
+                return MethodHandles.publicLookup().findConstructor(klass,
+                    MethodType.methodType(void.class)).asType(constructorType);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        private static char primitiveKind(Class klass) {
+            if (klass == int.class || klass == Integer.class) {
+                return 'I';
+            }
+            if (klass == long.class || klass == Long.class) {
+                return 'J';
+            }
+            if (klass == double.class || klass == Double.class) {
+                return 'D';
+            }
+            if (klass == boolean.class || klass == Boolean.class) {
+                return 'Z';
+            }
+            if (klass == float.class || klass == Float.class) {
+                return 'F';
+            }
+            if (klass == short.class || klass == Short.class) {
+                return 'S';
+            }
+            if (klass == byte.class || klass == Byte.class) {
+                return 'B';
+            }
+            if (klass == char.class || klass == Character.class) {
+                return 'C';
+            }
+            return 0;
+        }
+    }
+}
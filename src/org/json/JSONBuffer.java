@@ -0,0 +1,179 @@
+package org.json;
+
+/*
+Copyright (c) 2013 JSON.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+The Software shall be used for Good, not Evil.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.io.Writer;
+
+/**
+ * A JSONBuffer is an unsynchronized Writer that collects characters in a char
+ * array, for building JSON texts. Unlike a StringWriter, it does not lock on
+ * every write. Each thread keeps one spare array: a new JSONBuffer takes the
+ * spare array if there is one, and close() gives it back, so a thread that
+ * makes many texts reuses the same array instead of growing a new one each
+ * time. A JSONBuffer that is made while another is open on the same thread
+ * gets an array of its own. Arrays that have grown larger than
+ * <code>maxRetained</code> characters are not kept.
+ * <p>
+ * The ThreadLocal holds only the char array, so a thread pool that outlives
+ * an application does not keep the application's classes loaded.
+ * @author JSON.org
+ * @version 2013-01-24
+ */
+final class JSONBuffer extends Writer {
+
+    /**
+     * The size of a new array.
+     */
+    private static final int initialCapacity = 256;
+
+    /**
+     * The largest array, in characters, that is kept for reuse.
+     */
+    private static final int maxRetained = 64 * 1024;
+
+    /**
+     * Each thread's spare array, or null if it is in use or there is none.
+     */
+    private static final ThreadLocal spare = new ThreadLocal();
+
+    /**
+     * The characters. It is null after the buffer is closed.
+     */
+    private char[] chars;
+
+    /**
+     * The number of characters written.
+     */
+    private int length;
+
+
+    /**
+     * Make an empty JSONBuffer, taking the thread's spare array if there is
+     * one.
+     */
+    JSONBuffer() {
+        char[] chars = (char[])spare.get();
+        if (chars == null) {
+            chars = new char[initialCapacity];
+        } else {
+            spare.set(null);
+        }
+        this.chars = chars;
+    }
+
+
+    /**
+     * Give the array back to the thread for reuse. The buffer must not be
+     * used after it is closed.
+     */
+    public void close() {
+        if (this.chars != null && this.chars.length <= maxRetained) {
+            spare.set(this.chars);
+        }
+        this.chars = null;
+        this.length = 0;
+    }
+
+
+    /**
+     * Make room for more characters.
+     * @param needed The number of characters about to be written.
+     */
+    private void ensure(int needed) {
+        int required = this.length + needed;
+        if (required > this.chars.length) {
+            int capacity = this.chars.length << 1;
+            if (capacity < required) {
+                capacity = required;
+            }
+            char[] grown = new char[capacity];
+            System.arraycopy(this.chars, 0, grown, 0, this.length);
+            this.chars = grown;
+        }
+    }
+
+
+    public void flush() {
+    }
+
+
+    /**
+     * Get the text that has been written.
+     * @return A new String.
+     */
+    public String toString() {
+        return new String(this.chars, 0, this.length);
+    }
+
+
+    public void write(char[] cbuf, int off, int len) {
+        this.ensure(len);
+        System.arraycopy(cbuf, off, this.chars, this.length, len);
+        this.length += len;
+    }
+
+
+    public void write(int c) {
+        if (this.length == this.chars.length) {
+            this.ensure(1);
+        }
+        this.chars[this.length] = (char)c;
+        this.length += 1;
+    }
+
+
+    public void write(String str) {
+        this.write(str, 0, str.length());
+    }
+
+
+    public void write(String str, int off, int len) {
+        this.ensure(len);
+        str.getChars(off, off + len, this.chars, this.length);
+        this.length += len;
+    }
+
+
+    /**
+     * Write a finite double with the shortest digits that read back as the
+     * same value.
+     * @param d A finite double.
+     */
+    void writeDouble(double d) {
+        this.ensure(DoubleFormatter.maxLength);
+        this.length = DoubleFormatter.format(d, this.chars, this.length);
+    }
+
+
+    /**
+     * Write a finite float with the shortest digits that read back as the
+     * same value.
+     * @param f A finite float.
+     */
+    void writeFloat(float f) {
+        this.ensure(DoubleFormatter.maxLength);
+        this.length = DoubleFormatter.format(f, this.chars, this.length);
+    }
+}
@@ -0,0 +1,1069 @@
+package org.json;
+
+/*
+Copyright (c) 2013 JSON.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+The Software shall be used for Good, not Evil.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * JSONIndex parses large JSON texts in two stages. The first stage reads the
+ * UTF-8 text eight bytes at a time as longs, and uses bit arithmetic on them
+ * to find the quotes, backslashes, braces, brackets, colons, and commas of
+ * each block of 64 bytes at once. It works out which quotes are escaped and
+ * which bytes are inside strings with carries between blocks, and records
+ * the positions of the quotes and of the structural characters outside
+ * strings in an index. The second stage walks the index, checking the syntax
+ * and building values, and only looks at the bytes between the indexed
+ * positions to read numbers, literals, and strings. The index is made and
+ * used a window at a time, so its size does not depend on the size of the
+ * text.
+ * <p>
+ * The index handles JSON as it is usually written: strings in double quotes,
+ * and ':' and ',' as separators. The tokener's other forms, such as single
+ * quotes or '=>', and all syntax errors, are handed to JSONTokener, so the
+ * results and error messages are those of the JSONObject and JSONArray
+ * constructors.
+ * <p>
+ * A large array can also be parsed in pieces on a ForkJoinPool. A first pass
+ * of the first stage finds the commas between its elements, the pieces
+ * between them are parsed at the same time, and their values are appended in
+ * order.
+ * @author JSON.org
+ * @version 2013-01-24
+ */
+public class JSONIndex {
+
+    /**
+     * The bit of each byte that is above the low seven.
+     */
+    private static final long highs = 0x8080808080808080L;
+
+    /**
+     * The low seven bits of each byte.
+     */
+    private static final long lows = 0x7F7F7F7F7F7F7F7FL;
+
+    /**
+     * The odd bits, for finding the ends of runs of backslashes.
+     */
+    private static final long oddBits = 0xAAAAAAAAAAAAAAAAL;
+
+    /**
+     * Multiplying by this moves the low bit of each byte into the top byte.
+     */
+    private static final long gather = 0x0102040810204080L;
+
+    /**
+     * Texts shorter than this are always parsed in one piece, since the first
+     * pass would cost more than the pieces save.
+     */
+    private static final int parallelThreshold = 1 << 20;
+
+    /**
+     * The least number of bytes in a piece of a text parsed in pieces.
+     */
+    private static final int pieceSize = 256 * 1024;
+
+    /**
+     * The text is indexed this many 64 byte blocks at a time.
+     */
+    private static final int windowBlocks = 256;
+
+    private static final Charset latin1 = Charset.forName("ISO-8859-1");
+    private static final Charset utf8 = Charset.forName("UTF-8");
+
+    /**
+     * True if values are built, false if they are only checked.
+     */
+    private final boolean build;
+
+    /**
+     * The UTF-8 text.
+     */
+    private final byte[] bytes;
+
+    /**
+     * The objects and arrays that are open, outermost first. They are null if
+     * values are not built.
+     */
+    private Object[] containers = new Object[16];
+
+    /**
+     * The number of open objects and arrays.
+     */
+    private int depth;
+
+    /**
+     * The position after the text.
+     */
+    private final int end;
+
+    /**
+     * A mask of 1 if the next block begins with an escaped byte, else 0.
+     */
+    private long escaped;
+
+    /**
+     * All ones if the next block begins inside a string, else 0.
+     */
+    private long inString;
+
+    /**
+     * The key of the value being read, if it is in an object.
+     */
+    private String key;
+
+    /**
+     * The position after the last indexed byte handled by the second stage.
+     */
+    private int last;
+
+    /**
+     * The position of the last backslash or non-ASCII byte indexed, or -1.
+     */
+    private int lastSpecial = -1;
+
+    /**
+     * The number of members of the outermost object or array.
+     */
+    private int members;
+
+    /**
+     * The current mode of the second stage. It can be 'i' (initial),
+     * 'k' (expecting a key or '}'), 'q' (in a key), ':' (expecting a colon),
+     * 'v' (expecting a value in an object), 'a' (expecting a value or ']' in
+     * an array), 's' (in a string value), 'n' (expecting ',' or the end of the
+     * object or array), 'd' (done), or 'e' (handed to JSONTokener).
+     */
+    private char mode;
+
+    /**
+     * The position of the block that the first stage will index next.
+     */
+    private int next;
+
+    /**
+     * The position of the open quote of the string being read.
+     */
+    private int quote;
+
+    /**
+     * The scopes that are open: 'o' (object) or 'a' (array).
+     */
+    private char[] scopes = new char[16];
+
+    /**
+     * The position of the last backslash or non-ASCII byte before each
+     * indexed position, so that strings without them can be read directly.
+     */
+    private final int[] specials;
+
+    /**
+     * The last block of the text, padded with spaces.
+     */
+    private final ByteBuffer tail;
+
+    /**
+     * A buffer for the characters of unquoted values and escaped strings.
+     */
+    private char[] text = new char[32];
+
+    /**
+     * The indexed positions of the current window, and their number.
+     */
+    private final int[] tokens;
+    private int tokenCount;
+
+    /**
+     * The text, read as little-endian longs.
+     */
+    private final ByteBuffer words;
+
+
+    /**
+     * Make a JSONIndex for a range of UTF-8 text.
+     * @param bytes The text.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     * @param build true if values are to be built.
+     */
+    private JSONIndex(byte[] bytes, int start, int end, boolean build) {
+        this.build = build;
+        this.bytes = bytes;
+        this.end = end;
+        this.last = start;
+        this.mode = 'i';
+        this.next = start;
+        int size = Math.min(windowBlocks, (end - start + 63) / 64) * 64;
+        this.specials = new int[size];
+        this.tokens = new int[size];
+        this.words = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        this.tail = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+
+    /**
+     * Add a value to the innermost open object or array.
+     * @param value The value.
+     * @return false if it is a duplicate key.
+     */
+    private boolean add(Object value) {
+        if (this.depth == 1) {
+            this.members += 1;
+        }
+        if (this.build) {
+            Object container = this.containers[this.depth - 1];
+            if (container instanceof JSONArray) {
+                ((JSONArray)container).put(value);
+            } else {
+                try {
+                    ((JSONObject)container).putOnce(this.key, value);
+                } catch (JSONException e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Determine if the bytes between the last indexed byte and a position
+     * are whitespace.
+     * @param p A position.
+     * @return true if they are whitespace.
+     */
+    private boolean blank(int p) {
+        for (int i = this.last; i < p; i += 1) {
+            int b = this.bytes[i] & 0xFF;
+            if (b > ' ' || b == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Make a UTF-8 text from a string. String.getBytes replaces unpaired
+     * surrogates with '?', so if the bytes contain a '?' the string is encoded
+     * again with an encoder that reports them.
+     * @param source A string.
+     * @return The bytes, or null if the string cannot be encoded exactly.
+     */
+    private static ByteBuffer bytes(String source) {
+        byte[] bytes = source.getBytes(utf8);
+        ByteBuffer words =
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int i = 0;
+        while (i + 8 <= bytes.length &&
+                equal(words.getLong(i), 0x3F3F3F3F3F3F3F3FL) == 0) {
+            i += 8;
+        }
+        while (i < bytes.length && bytes[i] != '?') {
+            i += 1;
+        }
+        if (i == bytes.length) {
+            return words;
+        }
+        try {
+            return utf8.newEncoder().encode(CharBuffer.wrap(source));
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Close the innermost object or array.
+     * @param c The closing brace or bracket.
+     * @return false if it does not match.
+     */
+    private boolean close(int c) {
+        if (c != (this.scopes[this.depth - 1] == 'o' ? '}' : ']')) {
+            return false;
+        }
+        this.depth -= 1;
+        this.mode = this.depth == 0 ? 'd' : 'n';
+        return true;
+    }
+
+
+    /**
+     * Find the bytes of a word that are equal to the byte in each byte of a
+     * pattern.
+     * @param word Eight bytes.
+     * @param pattern A byte, repeated eight times.
+     * @return The high bit of each byte that is equal.
+     */
+    private static long equal(long word, long pattern) {
+        long x = word ^ pattern;
+        return ~(((x & lows) + lows) | x | lows);
+    }
+
+
+    /**
+     * Index the next window of blocks.
+     * @return false if a string holds a character that JSONTokener does not
+     * allow in strings.
+     */
+    private boolean index() {
+        int count = 0;
+        for (int n = 0; n < windowBlocks && this.next < this.end; n += 1) {
+            int base = this.next;
+            ByteBuffer buffer = this.words;
+            int at = base;
+            if (base + 64 > this.end) {
+                this.tail.clear();
+                this.tail.put(this.bytes, base, this.end - base);
+                while (this.tail.hasRemaining()) {
+                    this.tail.put((byte)' ');
+                }
+                buffer = this.tail;
+                at = 0;
+            }
+            long quotes = 0;
+            long backslashes = 0;
+            long structurals = 0;
+            long controls = 0;
+            long highBytes = 0;
+            for (int w = 0; w < 64; w += 8) {
+                long word = buffer.getLong(at + w);
+                long brackets = word | 0x2020202020202020L;
+                quotes |= squeeze(equal(word, 0x2222222222222222L)) << w;
+                backslashes |=
+                    squeeze(equal(word, 0x5C5C5C5C5C5C5C5CL)) << w;
+                structurals |= squeeze(
+                    equal(brackets, 0x7B7B7B7B7B7B7B7BL) |
+                    equal(brackets, 0x7D7D7D7D7D7D7D7DL) |
+                    equal(word, 0x3A3A3A3A3A3A3A3AL) |
+                    equal(word, 0x2C2C2C2C2C2C2C2CL)) << w;
+                controls |= squeeze(~(((word & lows) +
+                    0x6060606060606060L) | word) & highs) << w;
+                highBytes |= squeeze(word & highs) << w;
+            }
+
+// A byte is escaped if it follows an odd number of backslashes. Subtracting
+// the starts of the runs of backslashes from the odd bits carries through each
+// run, leaving its end marked according to whether its length is odd.
+
+            long escapedHere = this.escaped;
+            if (backslashes == 0) {
+                this.escaped = 0;
+            } else {
+                long starts = backslashes & ~this.escaped;
+                long code = (((starts << 1) | oddBits) - starts) ^ oddBits;
+                escapedHere = code ^ (backslashes | this.escaped);
+                this.escaped = (code & backslashes) >>> 63;
+            }
+            quotes &= ~escapedHere;
+
+// A prefix XOR of the quotes marks the bytes from each open quote up to its
+// close quote.
+
+            long inside = quotes;
+            inside ^= inside << 1;
+            inside ^= inside << 2;
+            inside ^= inside << 4;
+            inside ^= inside << 8;
+            inside ^= inside << 16;
+            inside ^= inside << 32;
+            inside ^= this.inString;
+            this.inString = inside >> 63;
+            for (long m = controls & inside; m != 0; m &= m - 1) {
+                int b = this.bytes[base + Long.numberOfTrailingZeros(m)];
+                if (b == 0 || b == '\n' || b == '\r') {
+                    return false;
+                }
+            }
+            long marks = (structurals & ~inside) | quotes;
+            long special = backslashes | highBytes;
+            if (special == 0) {
+                for (; marks != 0; marks &= marks - 1) {
+                    this.tokens[count] =
+                        base + Long.numberOfTrailingZeros(marks);
+                    this.specials[count] = this.lastSpecial;
+                    count += 1;
+                }
+            } else {
+                for (; marks != 0; marks &= marks - 1) {
+                    int bit = Long.numberOfTrailingZeros(marks);
+                    long before = special & ((1L << bit) - 1);
+                    this.tokens[count] = base + bit;
+                    this.specials[count] = before == 0
+                        ? this.lastSpecial
+                        : base + 63 - Long.numberOfLeadingZeros(before);
+                    count += 1;
+                }
+                this.lastSpecial =
+                    base + 63 - Long.numberOfLeadingZeros(special);
+            }
+            this.next = base + 64;
+        }
+        this.tokenCount = count;
+        return true;
+    }
+
+
+    /**
+     * Get the number of members of the object, or elements of the array, in
+     * a JSON text, checking its syntax without building anything.
+     * @param bytes UTF-8 text that begins with '{' or '['.
+     * @return The number of members, or -1 if the text has a syntax error or
+     * is not in the form that the index handles. JSONTokener must then be
+     * used to find the error.
+     */
+    public static int length(byte[] bytes) {
+        JSONIndex index = new JSONIndex(bytes, utf8Start(bytes),
+            bytes.length, false);
+        return index.run() ? index.members : -1;
+    }
+
+
+    /**
+     * Get the number of members of the object, or elements of the array, in
+     * a JSON text, checking its syntax without building anything.
+     * @param source A string that begins with '{' or '['.
+     * @return The number of members, or -1 if the text has a syntax error or
+     * is not in the form that the index handles. JSONTokener must then be
+     * used to find the error.
+     */
+    public static int length(String source) {
+        ByteBuffer buffer = bytes(source);
+        if (buffer == null) {
+            return -1;
+        }
+        JSONIndex index = new JSONIndex(buffer.array(), 0, buffer.limit(),
+            false);
+        return index.run() ? index.members : -1;
+    }
+
+
+    /**
+     * Open an object or array.
+     * @param c The opening brace or bracket.
+     * @return false if it is a duplicate key.
+     */
+    private boolean open(int c) {
+        Object container = null;
+        if (this.build) {
+            container = c == '{' ? (Object)new JSONObject() : new JSONArray();
+        }
+        if (this.depth > 0 && !this.add(container)) {
+            return false;
+        }
+        if (this.depth == this.scopes.length) {
+            char[] scopes = new char[this.depth * 2];
+            Object[] containers = new Object[this.depth * 2];
+            System.arraycopy(this.scopes, 0, scopes, 0, this.depth);
+            System.arraycopy(this.containers, 0, containers, 0, this.depth);
+            this.scopes = scopes;
+            this.containers = containers;
+        }
+        this.containers[this.depth] = container;
+        this.scopes[this.depth] = c == '{' ? 'o' : 'a';
+        this.depth += 1;
+        this.mode = c == '{' ? 'k' : 'a';
+        return true;
+    }
+
+
+    /**
+     * Parse an array in pieces.
+     * @param bytes UTF-8 text.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     * @param pool The pool on which to parse the pieces.
+     * @return A JSONArray, or null if the text must be handed to JSONTokener.
+     */
+    private static JSONArray parallel(byte[] bytes, int start, int end,
+            ForkJoinPool pool) {
+        if (end - start < parallelThreshold || pool.getParallelism() < 2) {
+            return null;
+        }
+        int[] commas = new JSONIndex(bytes, start, end, false).split(
+            Math.max(pieceSize, (end - start) / (pool.getParallelism() * 4)));
+        if (commas == null || commas.length == 0) {
+            return null;
+        }
+        Piece[] pieces = new Piece[commas.length + 1];
+        for (int i = 0; i < pieces.length; i += 1) {
+            pieces[i] = new Piece(bytes,
+                i == 0 ? start : commas[i - 1] + 1,
+                i < commas.length ? commas[i] + 1 : end,
+                i == 0, i == commas.length);
+            pool.execute(pieces[i]);
+        }
+        JSONArray array = new JSONArray();
+        boolean failed = false;
+        for (int i = 0; i < pieces.length; i += 1) {
+            JSONArray piece = (JSONArray)pieces[i].join();
+            if (piece == null) {
+                failed = true;
+            } else if (!failed) {
+                array.append(piece);
+            }
+        }
+        return failed ? null : array;
+    }
+
+
+    /**
+     * Parse the text.
+     * @return true if the outermost object or array was read, false if the
+     * text must be handed to JSONTokener.
+     */
+    private boolean run() {
+        while (this.next < this.end) {
+            if (!this.index()) {
+                this.mode = 'e';
+                return false;
+            }
+            for (int i = 0; i < this.tokenCount; i += 1) {
+                if (!this.step(this.tokens[i], this.specials[i])) {
+                    this.mode = 'e';
+                    return false;
+                }
+                if (this.mode == 'd') {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Read the unquoted value between the last indexed byte and a position.
+     * @param p A position.
+     * @return The value, or null if it is not plain ASCII text that the
+     * tokener would read as a single value.
+     */
+    private Object scalar(int p) {
+        int i = this.last;
+        while (i < p && (this.bytes[i] & 0xFF) <= ' ' && this.bytes[i] != 0) {
+            i += 1;
+        }
+        int j = p;
+        while (j > i && (this.bytes[j - 1] & 0xFF) <= ' ' &&
+                this.bytes[j - 1] != 0) {
+            j -= 1;
+        }
+        if (i == j) {
+            return null;
+        }
+        if (this.text.length < j - i) {
+            this.text = new char[j - i];
+        }
+        for (int k = i; k < j; k += 1) {
+            int b = this.bytes[k];
+            if (b < ' ' || b == '\'' || b == ';' || b == '=' || b == '#' ||
+                    b == '/' || b == '\\') {
+                return null;
+            }
+            this.text[k - i] = (char)b;
+        }
+        return this.build
+            ? JSONTokener.unquotedValue(this.text, j - i, false)
+            : Boolean.TRUE;
+    }
+
+
+    /**
+     * Find commas between the elements of the outermost array, about a given
+     * number of bytes apart, using only the first stage.
+     * @param size The least number of bytes between the commas.
+     * @return The positions of the commas, or null if the text is not an
+     * array that the index can split.
+     */
+    private int[] split(int size) {
+        int[] commas = new int[16];
+        int count = 0;
+        int depth = 0;
+        int target = this.next + size;
+        while (this.next < this.end) {
+            if (!this.index()) {
+                return null;
+            }
+            for (int i = 0; i < this.tokenCount; i += 1) {
+                int p = this.tokens[i];
+                switch (this.bytes[p]) {
+                case '{':
+                case '[':
+                    if (depth == 0 &&
+                            (this.bytes[p] != '[' || !this.blank(p))) {
+                        return null;
+                    }
+                    depth += 1;
+                    break;
+                case '}':
+                case ']':
+                    depth -= 1;
+                    if (depth == 0) {
+                        int[] found = new int[count];
+                        System.arraycopy(commas, 0, found, 0, count);
+                        return found;
+                    }
+                    break;
+                case ',':
+                    if (depth == 1 && p >= target) {
+                        if (count == commas.length) {
+                            int[] grown = new int[count * 2];
+                            System.arraycopy(commas, 0, grown, 0, count);
+                            commas = grown;
+                        }
+                        commas[count] = p;
+                        count += 1;
+                        target = p + size;
+                    }
+                    break;
+                }
+                if (depth == 0) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Shift the high bit of each byte of a word into one byte.
+     * @param bits A word with only high bits set.
+     * @return Eight bits, the first byte's lowest.
+     */
+    private static long squeeze(long bits) {
+        return ((bits >>> 7) * gather) >>> 56;
+    }
+
+
+    /**
+     * Handle an indexed position.
+     * @param p The position of a quote or a structural character.
+     * @param special The position of the last backslash or non-ASCII byte
+     * before it.
+     * @return false if the text must be handed to JSONTokener.
+     */
+    private boolean step(int p, int special) {
+        int c = this.bytes[p];
+        Object value;
+        switch (this.mode) {
+        case 'i':
+            if (!this.blank(p) || (c != '{' && c != '[') || !this.open(c)) {
+                return false;
+            }
+            break;
+        case 'q':
+            value = this.string(p, special);
+            if (value == null) {
+                return false;
+            }
+            this.key = (String)value;
+            this.mode = ':';
+            break;
+        case 's':
+            value = this.string(p, special);
+            if (value == null || !this.add(value)) {
+                return false;
+            }
+            this.mode = 'n';
+            break;
+        case ':':
+            if (!this.blank(p) || c != ':') {
+                return false;
+            }
+            this.mode = 'v';
+            break;
+        case 'k':
+            if (!this.blank(p)) {
+                value = this.scalar(p);
+                if (value == null || c != ':') {
+                    return false;
+                }
+                this.key = value.toString();
+                this.mode = 'v';
+            } else if (c == '"') {
+                this.quote = p;
+                this.mode = 'q';
+            } else if (c != '}' || !this.close(c)) {
+                return false;
+            }
+            break;
+        case 'v':
+        case 'a':
+            if (!this.blank(p)) {
+                value = this.scalar(p);
+                if (value == null || !this.add(value)) {
+                    return false;
+                }
+                this.mode = 'n';
+                if (!this.separate(c)) {
+                    return false;
+                }
+            } else if (c == '"') {
+                this.quote = p;
+                this.mode = 's';
+            } else if (c == '{' || c == '[') {
+                if (!this.open(c)) {
+                    return false;
+                }
+            } else if (this.mode != 'a') {
+                return false;
+            } else if (c == ']') {
+                if (!this.close(c)) {
+                    return false;
+                }
+            } else if (c != ',' || !this.add(JSONObject.NULL) ||
+                    !this.separate(c)) {
+                return false;
+            }
+            break;
+        default:
+            if (!this.blank(p) || !this.separate(c)) {
+                return false;
+            }
+        }
+        this.last = p + 1;
+        return true;
+    }
+
+
+    /**
+     * Handle the character after a value: a comma, or the end of the
+     * innermost object or array.
+     * @param c The character.
+     * @return false if it is neither.
+     */
+    private boolean separate(int c) {
+        if (c == ',') {
+            this.mode = this.scopes[this.depth - 1] == 'o' ? 'k' : 'a';
+            return true;
+        }
+        return c != '"' && c != ':' && this.close(c);
+    }
+
+
+    /**
+     * Read the string from the open quote to a close quote.
+     * @param p The position of the close quote.
+     * @param special The position of the last backslash or non-ASCII byte
+     * before it.
+     * @return The string, or null if it is not one that the tokener would
+     * read.
+     */
+    private Object string(int p, int special) {
+        int start = this.quote + 1;
+        if (special < start) {
+            return this.build
+                ? new String(this.bytes, start, p - start, latin1)
+                : "";
+        }
+        int length = this.unescape(start, p);
+        if (length >= 0) {
+            return this.build ? new String(this.text, 0, length) : "";
+        }
+        try {
+            return new JSONTokener(this.bytes, this.quote, p + 1 - this.quote)
+                .nextValue();
+        } catch (JSONException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Make a JSONArray from UTF-8 text, using the index.
+     * @param bytes UTF-8 text that begins with '['.
+     * @return A JSONArray.
+     * @throws JSONException If there is a syntax error.
+     */
+    public static JSONArray toJSONArray(byte[] bytes) throws JSONException {
+        JSONIndex index = new JSONIndex(bytes, utf8Start(bytes),
+            bytes.length, true);
+        if (index.run() && index.containers[0] instanceof JSONArray) {
+            return (JSONArray)index.containers[0];
+        }
+        return new JSONArray(new JSONTokener(bytes));
+    }
+
+
+    /**
+     * Make a JSONArray from a source JSON text, using the index.
+     * @param source A string that begins with '['.
+     * @return A JSONArray.
+     * @throws JSONException If there is a syntax error.
+     */
+    public static JSONArray toJSONArray(String source) throws JSONException {
+        ByteBuffer buffer = bytes(source);
+        if (buffer != null) {
+            JSONIndex index = new JSONIndex(buffer.array(), 0, buffer.limit(),
+                true);
+            if (index.run() && index.containers[0] instanceof JSONArray) {
+                return (JSONArray)index.containers[0];
+            }
+        }
+        return new JSONArray(source);
+    }
+
+
+    /**
+     * Make a JSONArray from UTF-8 text, parsing it in pieces on a pool if it
+     * is large.
+     * @param bytes UTF-8 text that begins with '['.
+     * @param pool The pool on which to parse the pieces.
+     * @return A JSONArray.
+     * @throws JSONException If there is a syntax error.
+     */
+    public static JSONArray toJSONArray(byte[] bytes, ForkJoinPool pool)
+            throws JSONException {
+        JSONArray array = parallel(bytes, utf8Start(bytes), bytes.length, pool);
+        return array != null ? array : toJSONArray(bytes);
+    }
+
+
+    /**
+     * Make a JSONArray from a source JSON text, parsing it in pieces on a
+     * pool if it is large.
+     * @param source A string that begins with '['.
+     * @param pool The pool on which to parse the pieces.
+     * @return A JSONArray.
+     * @throws JSONException If there is a syntax error.
+     */
+    public static JSONArray toJSONArray(String source, ForkJoinPool pool)
+            throws JSONException {
+        ByteBuffer buffer = bytes(source);
+        if (buffer != null) {
+            JSONArray array = parallel(buffer.array(), 0, buffer.limit(),
+                pool);
+            if (array != null) {
+                return array;
+            }
+        }
+        return toJSONArray(source);
+    }
+
+
+    /**
+     * Make a JSONObject from UTF-8 text, using the index.
+     * @param bytes UTF-8 text that begins with '{'.
+     * @return A JSONObject.
+     * @throws JSONException If there is a syntax error or a duplicated key.
+     */
+    public static JSONObject toJSONObject(byte[] bytes) throws JSONException {
+        JSONIndex index = new JSONIndex(bytes, utf8Start(bytes),
+            bytes.length, true);
+        if (index.run() && index.containers[0] instanceof JSONObject) {
+            return (JSONObject)index.containers[0];
+        }
+        return new JSONObject(new JSONTokener(bytes));
+    }
+
+
+    /**
+     * Make a JSONObject from a source JSON text, using the index.
+     * @param source A string that begins with '{'.
+     * @return A JSONObject.
+     * @throws JSONException If there is a syntax error or a duplicated key.
+     */
+    public static JSONObject toJSONObject(String source) throws JSONException {
+        ByteBuffer buffer = bytes(source);
+        if (buffer != null) {
+            JSONIndex index = new JSONIndex(buffer.array(), 0, buffer.limit(),
+                true);
+            if (index.run() && index.containers[0] instanceof JSONObject) {
+                return (JSONObject)index.containers[0];
+            }
+        }
+        return new JSONObject(source);
+    }
+
+
+    /**
+     * Decode the UTF-8 bytes and escapes of a string into the text buffer, as
+     * JSONTokener.nextChars does.
+     * @param start The position after the open quote.
+     * @param end The position of the close quote.
+     * @return The number of characters, or -1 if the string holds an escape
+     * or a byte sequence that is left for the tokener to read or report.
+     */
+    private int unescape(int start, int end) {
+        if (this.text.length < end - start) {
+            this.text = new char[end - start];
+        }
+        char[] chars = this.text;
+        int length = 0;
+        int i = start;
+        while (i < end) {
+            int c = this.bytes[i] & 0xFF;
+            i += 1;
+            if (c == '\\') {
+                if (i == end) {
+                    return -1;
+                }
+                c = this.bytes[i];
+                i += 1;
+                switch (c) {
+                case 'b':
+                    c = '\b';
+                    break;
+                case 't':
+                    c = '\t';
+                    break;
+                case 'n':
+                    c = '\n';
+                    break;
+                case 'f':
+                    c = '\f';
+                    break;
+                case 'r':
+                    c = '\r';
+                    break;
+                case 'u':
+                    c = 0;
+                    for (int j = 0; j < 4; j += 1, i += 1) {
+                        int d = i < end
+                            ? Character.digit(this.bytes[i], 16)
+                            : -1;
+                        if (d < 0 || this.bytes[i] < 0) {
+                            return -1;
+                        }
+                        c = (c << 4) | d;
+                    }
+                    break;
+                case '"':
+                case '\'':
+                case '\\':
+                case '/':
+                    break;
+                default:
+                    return -1;
+                }
+            } else if (c >= 0x80) {
+                int minimum;
+                int more;
+                if ((c & 0xE0) == 0xC0) {
+                    c &= 0x1F;
+                    minimum = 0x80;
+                    more = 1;
+                } else if ((c & 0xF0) == 0xE0) {
+                    c &= 0x0F;
+                    minimum = 0x800;
+                    more = 2;
+                } else if ((c & 0xF8) == 0xF0) {
+                    c &= 0x07;
+                    minimum = 0x10000;
+                    more = 3;
+                } else {
+                    return -1;
+                }
+                if (end - i < more) {
+                    return -1;
+                }
+                for (; more > 0; more -= 1, i += 1) {
+                    if ((this.bytes[i] & 0xC0) != 0x80) {
+                        return -1;
+                    }
+                    c = (c << 6) | (this.bytes[i] & 0x3F);
+                }
+                if (c < minimum || c > 0x10FFFF ||
+                        (c >= 0xD800 && c <= 0xDFFF)) {
+                    return -1;
+                }
+                if (c >= 0x10000) {
+                    c -= 0x10000;
+                    chars[length] = (char)(0xD800 + (c >>> 10));
+                    length += 1;
+                    c = 0xDC00 + (c & 0x3FF);
+                }
+            }
+            chars[length] = (char)c;
+            length += 1;
+        }
+        return length;
+    }
+
+
+    /**
+     * Find where UTF-8 text begins, after a byte order mark, as
+     * JSONTokener(byte[]) does.
+     * @param bytes UTF-8 text.
+     * @return 3 if there is a byte order mark, else 0.
+     */
+    private static int utf8Start(byte[] bytes) {
+        return bytes.length >= 3 && bytes[0] == (byte)0xEF &&
+                bytes[1] == (byte)0xBB && bytes[2] == (byte)0xBF
+            ? 3
+            : 0;
+    }
+
+
+    /**
+     * A Piece parses a range of an array's elements, from the open bracket
+     * or the position after a comma, to the position after the next comma
+     * that was chosen or to the end of the text.
+     */
+    private static class Piece extends RecursiveTask {
+        private static final long serialVersionUID = 0;
+        private final byte[] bytes;
+        private final int end;
+        private final boolean first;
+        private final boolean last;
+        private final int start;
+
+        Piece(byte[] bytes, int start, int end, boolean first, boolean last) {
+            this.bytes = bytes;
+            this.end = end;
+            this.first = first;
+            this.last = last;
+            this.start = start;
+        }
+
+        /**
+         * Parse the piece.
+         * @return A JSONArray of its elements, or null if the piece must be
+         * handed to JSONTokener.
+         */
+        protected Object compute() {
+            JSONIndex index = new JSONIndex(this.bytes, this.start, this.end,
+                true);
+            if (!this.first) {
+                index.open('[');
+            }
+            if (this.last
+                    ? index.run()
+                    : !index.run() && index.mode == 'a' && index.depth == 1) {
+                return index.containers[0];
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package org.json;
+
+/*
+Copyright (c) 2013 JSON.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+The Software shall be used for Good, not Evil.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * JSONMap is the map in which a JSONObject keeps its properties. The keys and
+ * values are kept in a pair of arrays in the order in which the keys were
+ * first put, so a JSONObject's keys are iterated, and its text is written, in
+ * a stable order. There are no entry objects. A small map is searched
+ * linearly. A map with more than <code>linearLimit</code> keys also keeps an
+ * open addressing hash index into the arrays.
+ * <p>
+ * A JSONMap does not hold null keys. It is not synchronized.
+ * @author JSON.org
+ * @version 2013-01-24
+ */
+class JSONMap extends AbstractMap {
+
+    /**
+     * The largest map that is searched without a hash index.
+     */
+    static final int linearLimit = 8;
+
+    /**
+     * The shared empty array of an empty map.
+     */
+    private static final Object[] none = new Object[0];
+
+    /**
+     * The hash index. Each slot holds 0 (empty) or a key's position plus one.
+     * Its length is a power of two, at least twice the size. It is null while
+     * the size is <code>linearLimit</code> or less.
+     */
+    private int[] index;
+
+    /**
+     * The keys, in insertion order.
+     */
+    private Object[] keys;
+
+    /**
+     * The number of structural changes, for detecting concurrent changes
+     * during an iteration.
+     */
+    private int modCount;
+
+    /**
+     * The number of keys.
+     */
+    private int size;
+
+    /**
+     * The values. values[i] belongs to keys[i].
+     */
+    private Object[] values;
+
+
+    /**
+     * Make an empty JSONMap.
+     */
+    JSONMap() {
+        this.keys = none;
+        this.values = none;
+    }
+
+
+    public void clear() {
+        for (int i = 0; i < this.size; i += 1) {
+            this.keys[i] = null;
+            this.values[i] = null;
+        }
+        this.index = null;
+        this.size = 0;
+        this.modCount += 1;
+    }
+
+
+    public boolean containsKey(Object key) {
+        return this.find(key) >= 0;
+    }
+
+
+    public Set entrySet() {
+        return new AbstractSet() {
+            public void clear() {
+                JSONMap.this.clear();
+            }
+
+            public Iterator iterator() {
+                return new Walker() {
+                    Object element(int i) {
+                        return new Entry(i);
+                    }
+                };
+            }
+
+            public int size() {
+                return JSONMap.this.size;
+            }
+        };
+    }
+
+
+    /**
+     * Find the position of a key.
+     * @param key A key.
+     * @return The position of the key in the keys array, or -1.
+     */
+    private int find(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        if (this.index == null) {
+            for (int i = 0; i < this.size; i += 1) {
+                Object k = this.keys[i];
+                if (k == key || k.equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int mask = this.index.length - 1;
+        int h = hash(key) & mask;
+        for (;;) {
+            int slot = this.index[h];
+            if (slot == 0) {
+                return -1;
+            }
+            Object k = this.keys[slot - 1];
+            if (k == key || k.equals(key)) {
+                return slot - 1;
+            }
+            h = (h + 1) & mask;
+        }
+    }
+
+
+    public Object get(Object key) {
+        int i = this.find(key);
+        return i >= 0 ? this.values[i] : null;
+    }
+
+
+    /**
+     * Spread the bits of a key's hash code, so that keys that differ only in
+     * their high bits do not collide in a small index.
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+
+    public Set keySet() {
+        return new AbstractSet() {
+            public void clear() {
+                JSONMap.this.clear();
+            }
+
+            public boolean contains(Object key) {
+                return JSONMap.this.find(key) >= 0;
+            }
+
+            public Iterator iterator() {
+                return new Walker() {
+                    Object element(int i) {
+                        return JSONMap.this.keys[i];
+                    }
+                };
+            }
+
+            public boolean remove(Object key) {
+                int i = JSONMap.this.find(key);
+                if (i < 0) {
+                    return false;
+                }
+                JSONMap.this.removeAt(i);
+                return true;
+            }
+
+            public int size() {
+                return JSONMap.this.size;
+            }
+        };
+    }
+
+
+    /**
+     * Add the key at position i to the hash index.
+     */
+    private void link(int i) {
+        int mask = this.index.length - 1;
+        int h = hash(this.keys[i]) & mask;
+        while (this.index[h] != 0) {
+            h = (h + 1) & mask;
+        }
+        this.index[h] = i + 1;
+    }
+
+
+    public Object put(Object key, Object value) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        int i = this.find(key);
+        if (i >= 0) {
+            Object old = this.values[i];
+            this.values[i] = value;
+            return old;
+        }
+        i = this.size;
+        if (i == this.keys.length) {
+            int capacity = i < 4 ? 4 : i + (i >> 1);
+            Object[] newKeys = new Object[capacity];
+            Object[] newValues = new Object[capacity];
+            System.arraycopy(this.keys, 0, newKeys, 0, i);
+            System.arraycopy(this.values, 0, newValues, 0, i);
+            this.keys = newKeys;
+            this.values = newValues;
+        }
+        this.keys[i] = key;
+        this.values[i] = value;
+        this.size = i + 1;
+        this.modCount += 1;
+        if (this.index != null && this.size * 2 <= this.index.length) {
+            this.link(i);
+        } else if (this.size > linearLimit) {
+            this.reindex();
+        }
+        return null;
+    }
+
+
+    /**
+     * Rebuild the hash index so that it is between two and four times the
+     * size, or drop it if the map has become small enough to search linearly.
+     */
+    private void reindex() {
+        if (this.size <= linearLimit) {
+            this.index = null;
+            return;
+        }
+        int length = 16;
+        while (length < this.size * 2) {
+            length <<= 1;
+        }
+        this.index = new int[length];
+        for (int i = 0; i < this.size; i += 1) {
+            this.link(i);
+        }
+    }
+
+
+    public Object remove(Object key) {
+        int i = this.find(key);
+        return i >= 0 ? this.removeAt(i) : null;
+    }
+
+
+    /**
+     * Remove the key at position i, keeping the order of the others.
+     * @param i The position of the key.
+     * @return The value that was associated with the key.
+     */
+    private Object removeAt(int i) {
+        Object old = this.values[i];
+        int moved = this.size - i - 1;
+        System.arraycopy(this.keys, i + 1, this.keys, i, moved);
+        System.arraycopy(this.values, i + 1, this.values, i, moved);
+        this.size -= 1;
+        this.keys[this.size] = null;
+        this.values[this.size] = null;
+        this.modCount += 1;
+        if (this.index != null) {
+            this.reindex();
+        }
+        return old;
+    }
+
+
+    public int size() {
+        return this.size;
+    }
+
+
+    /**
+     * A Map.Entry that reads and writes the arrays at a fixed position.
+     */
+    private final class Entry implements Map.Entry {
+        private final int i;
+
+        Entry(int i) {
+            this.i = i;
+        }
+
+        public boolean equals(Object object) {
+            if (!(object instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry e = (Map.Entry)object;
+            Object value = this.getValue();
+            return this.getKey().equals(e.getKey()) &&
+                (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        public Object getKey() {
+            return JSONMap.this.keys[this.i];
+        }
+
+        public Object getValue() {
+            return JSONMap.this.values[this.i];
+        }
+
+        public int hashCode() {
+            Object value = this.getValue();
+            return this.getKey().hashCode() ^
+                (value == null ? 0 : value.hashCode());
+        }
+
+        public Object setValue(Object value) {
+            Object old = JSONMap.this.values[this.i];
+            JSONMap.this.values[this.i] = value;
+            return old;
+        }
+
+        public String toString() {
+            return this.getKey() + "=" + this.getValue();
+        }
+    }
+
+
+    /**
+     * An iterator over the positions of the map, in insertion order.
+     */
+    private abstract class Walker implements Iterator {
+        private int expected = JSONMap.this.modCount;
+        private int last = -1;
+        private int next;
+
+        abstract Object element(int i);
+
+        public boolean hasNext() {
+            return this.next < JSONMap.this.size;
+        }
+
+        public Object next() {
+            if (this.expected != JSONMap.this.modCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (this.next >= JSONMap.this.size) {
+                throw new NoSuchElementException();
+            }
+            this.last = this.next;
+            this.next += 1;
+            return this.element(this.last);
+        }
+
+        public void remove() {
+            if (this.last < 0) {
+                throw new IllegalStateException();
+            }
+            if (this.expected != JSONMap.this.modCount) {
+                throw new ConcurrentModificationException();
+            }
+            JSONMap.this.removeAt(this.last);
+            this.next = this.last;
+            this.last = -1;
+            this.expected = JSONMap.this.modCount;
+        }
+    }
+}
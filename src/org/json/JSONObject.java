@@ -25,14 +25,12 @@ SOFTWARE.
 */
 
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
@@ -56,6 +54,12 @@ import java.util.Set;
  * found. An <code>opt</code> method returns a default value instead of throwing
  * an exception, and so is useful for obtaining optional values.
  * <p>
+ * Although the names are unordered in JSON, a JSONObject keeps them in the
+ * order in which they were first put, so its <code>keys</code>,
+ * <code>keySet</code>, and <code>toString</code> methods produce them in a
+ * stable order. A JSONObject parsed from a text writes its names in the order
+ * of the text.
+ * <p>
  * The generic <code>get()</code> and <code>opt()</code> methods return an
  * object, which you can cast or query for type. There are also typed
  * <code>get</code> and <code>opt</code> methods that do type checking and type
@@ -94,18 +98,47 @@ import java.util.Set;
  * @version 2012-12-01
  */
 public class JSONObject {
-    /**
-     * The maximum number of keys in the key pool.
-     */
-     private static final int keyPoolSize = 100;
-
    /**
      * Key pooling is like string interning, but without permanently tying up
      * memory. To help conserve memory, storage of duplicated key strings in
      * JSONObjects will be avoided by using a key pool to manage unique key
      * string objects. This is used by JSONObject.put(string, object).
      */
-     private static HashMap keyPool = new HashMap(keyPoolSize);
+     private static volatile KeyPool keyPool = new KeyPool();
+
+    /**
+     * The quoted forms of recently written keys, so that JSONObject.write and
+     * JSONWriter.key do not escape and encode the same keys over and over.
+     */
+    private static volatile KeyCache keyCache = new KeyCache();
+
+    /**
+     * The lowercase hexadecimal digits, for the four digit escapes of quote.
+     */
+    private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+
+    /**
+     * The escape sequence that quote writes for each character below 00A0,
+     * or null if the character is written as it is. The escape for / is only
+     * used when the / follows a &lt;.
+     */
+    private static final String[] escapes = new String[0xa0];
+
+    static {
+        for (int c = 0; c < escapes.length; c += 1) {
+            if (c < ' ' || c >= 0x80) {
+                escapes[c] = "\\u00" + hexDigits[c >>> 4] + hexDigits[c & 0xf];
+            }
+        }
+        escapes['\b'] = "\\b";
+        escapes['\t'] = "\\t";
+        escapes['\n'] = "\\n";
+        escapes['\f'] = "\\f";
+        escapes['\r'] = "\\r";
+        escapes['"'] = "\\\"";
+        escapes['/'] = "\\/";
+        escapes['\\'] = "\\\\";
+    }
 
     /**
      * JSONObject.NULL is equivalent to the value that JavaScript calls null,
@@ -144,7 +177,7 @@ public class JSONObject {
 
 
     /**
-     * The map where the JSONObject's properties are kept.
+     * The map where the JSONObject's properties are kept, in insertion order.
      */
     private final Map map;
 
@@ -162,7 +195,18 @@ public class JSONObject {
      * Construct an empty JSONObject.
      */
     public JSONObject() {
-        this.map = new HashMap();
+        this.map = new JSONMap();
+    }
+
+
+    /**
+     * Construct a JSONObject whose properties are decoded from a JSONTape as
+     * they are used.
+     * @param tape A tape.
+     * @param record The position of the object's record on the tape.
+     */
+    JSONObject(JSONTape tape, int record) {
+        this.map = tape.map(record);
     }
 
 
@@ -251,7 +295,7 @@ public class JSONObject {
      * @throws JSONException
      */
     public JSONObject(Map map) {
-        this.map = new HashMap();
+        this.map = new JSONMap();
         if (map != null) {
             Iterator i = map.entrySet().iterator();
             while (i.hasNext()) {
@@ -440,19 +484,7 @@ public class JSONObject {
             return "null";
         }
 
-// Shave off trailing zeros and decimal point, if possible.
-
-        String string = Double.toString(d);
-        if (string.indexOf('.') > 0 && string.indexOf('e') < 0 &&
-                string.indexOf('E') < 0) {
-            while (string.endsWith("0")) {
-                string = string.substring(0, string.length() - 1);
-            }
-            if (string.endsWith(".")) {
-                string = string.substring(0, string.length() - 1);
-            }
-        }
-        return string;
+        return DoubleFormatter.toString(d);
     }
 
 
@@ -577,6 +609,27 @@ public class JSONObject {
     }
 
 
+    /**
+     * Get the key cache used by JSONObject.write and JSONWriter.key to reuse
+     * the quoted forms of keys.
+     *
+     * @return The key cache, or null if quoted keys are not cached.
+     */
+    public static KeyCache getKeyCache() {
+        return keyCache;
+    }
+
+
+    /**
+     * Get the key pool used by JSONObject.put to share key strings.
+     *
+     * @return The key pool, or null if keys are not pooled.
+     */
+    public static KeyPool getKeyPool() {
+        return keyPool;
+    }
+
+
     /**
      * Get the long value associated with a key.
      *
@@ -754,6 +807,24 @@ public class JSONObject {
         return ja.length() == 0 ? null : ja;
     }
 
+    /**
+     * Determine if the character at an index of a string must be escaped by
+     * quote: a control character, a quote or backslash, a slash that follows
+     * a &lt;, or a character in the ranges 0080-009F and 2000-20FF.
+     * @param string A String.
+     * @param i An index into the string.
+     * @return true if the character must be escaped.
+     */
+    private static boolean needsEscape(String string, int i) {
+        char c = string.charAt(i);
+        if (c < escapes.length) {
+            return escapes[c] != null &&
+                (c != '/' || (i > 0 && string.charAt(i - 1) == '<'));
+        }
+        return c >= '\u2000' && c < '\u2100';
+    }
+
+
     /**
      * Produce a string from a Number.
      * @param  number A Number
@@ -767,10 +838,23 @@ public class JSONObject {
         }
         testValidity(number);
 
-// Shave off trailing zeros and decimal point, if possible.
+// Doubles and floats are written with the shortest digits that read back as
+// the same value.
+
+        if (number instanceof Double) {
+            return DoubleFormatter.toString(number.doubleValue());
+        }
+        if (number instanceof Float) {
+            return DoubleFormatter.toString(number.floatValue());
+        }
+
+// A BigDecimal is written as it is, so that its digits and scale survive a
+// round trip. Otherwise, shave off trailing zeros and decimal point, if
+// possible.
 
         String string = number.toString();
-        if (string.indexOf('.') > 0 && string.indexOf('e') < 0 &&
+        if (!(number instanceof BigDecimal) &&
+                string.indexOf('.') > 0 && string.indexOf('e') < 0 &&
                 string.indexOf('E') < 0) {
             while (string.endsWith("0")) {
                 string = string.substring(0, string.length() - 1);
@@ -979,48 +1063,11 @@ public class JSONObject {
 
 
     private void populateMap(Object bean) {
-        Class klass = bean.getClass();
-
-// If klass is a System class then set includeSuperClass to false.
-
-        boolean includeSuperClass = klass.getClassLoader() != null;
-
-        Method[] methods = includeSuperClass
-                ? klass.getMethods()
-                : klass.getDeclaredMethods();
-        for (int i = 0; i < methods.length; i += 1) {
-            try {
-                Method method = methods[i];
-                if (Modifier.isPublic(method.getModifiers())) {
-                    String name = method.getName();
-                    String key = "";
-                    if (name.startsWith("get")) {
-                        if ("getClass".equals(name) ||
-                                "getDeclaringClass".equals(name)) {
-                            key = "";
-                        } else {
-                            key = name.substring(3);
-                        }
-                    } else if (name.startsWith("is")) {
-                        key = name.substring(2);
-                    }
-                    if (key.length() > 0 &&
-                            Character.isUpperCase(key.charAt(0)) &&
-                            method.getParameterTypes().length == 0) {
-                        if (key.length() == 1) {
-                            key = key.toLowerCase();
-                        } else if (!Character.isUpperCase(key.charAt(1))) {
-                            key = key.substring(0, 1).toLowerCase() +
-                                key.substring(1);
-                        }
-
-                        Object result = method.invoke(bean, (Object[])null);
-                        if (result != null) {
-                            this.map.put(key, wrap(result));
-                        }
-                    }
-                }
-            } catch (Exception ignore) {
+        ClassInfo info = ClassInfo.forClass(bean.getClass());
+        for (int i = 0; i < info.names.length; i += 1) {
+            Object result = info.get(bean, i);
+            if (result != null) {
+                this.map.put(info.names[i], wrap(result));
             }
         }
     }
@@ -1122,20 +1169,15 @@ public class JSONObject {
      *  or if the key is null.
      */
     public JSONObject put(String key, Object value) throws JSONException {
-        String pooled;
+        KeyPool pool;
         if (key == null) {
             throw new JSONException("Null key.");
         }
         if (value != null) {
             testValidity(value);
-            pooled = (String)keyPool.get(key);
-            if (pooled == null) {
-                if (keyPool.size() >= keyPoolSize) {
-                    keyPool = new HashMap(keyPoolSize);
-                }
-                keyPool.put(key, key);
-            } else {
-                key = pooled;
+            pool = keyPool;
+            if (pool != null) {
+                key = pool.intern(key);
             }
             this.map.put(key, value);
         } else {
@@ -1192,72 +1234,72 @@ public class JSONObject {
      * @return  A String correctly formatted for insertion in a JSON text.
      */
     public static String quote(String string) {
-        StringWriter sw = new StringWriter();
-        synchronized (sw.getBuffer()) {
-            try {
-                return quote(string, sw).toString();
-            } catch (IOException ignored) {
-                // will never happen - we are writing to a string writer
-                return "";
-            }
+        if (string == null) {
+            return "\"\"";
+        }
+        int len = string.length();
+        int i = 0;
+        while (i < len && !needsEscape(string, i)) {
+            i += 1;
+        }
+        if (i == len) {
+            return "\"" + string + "\"";
+        }
+        JSONBuffer buffer = new JSONBuffer();
+        try {
+            return quote(string, buffer).toString();
+        } catch (IOException ignored) {
+            // will never happen - we are writing to a buffer
+            return "";
+        } finally {
+            buffer.close();
         }
     }
 
+    /**
+     * Write a string in double quotes with backslash sequences in all the
+     * right places, as <code>quote(String)</code> does. Runs of characters
+     * that do not need escaping are written with a single
+     * <code>write(String, int, int)</code>.
+     * @param string A String
+     * @param w A Writer
+     * @return The writer.
+     * @throws IOException
+     */
     public static Writer quote(String string, Writer w) throws IOException {
         if (string == null || string.length() == 0) {
             w.write("\"\"");
             return w;
         }
 
-        char b;
-        char c = 0;
-        String hhhh;
+        char c;
         int i;
         int len = string.length();
+        int start = 0;
 
         w.write('"');
         for (i = 0; i < len; i += 1) {
-            b = c;
-            c = string.charAt(i);
-            switch (c) {
-            case '\\':
-            case '"':
-                w.write('\\');
-                w.write(c);
-                break;
-            case '/':
-                if (b == '<') {
-                    w.write('\\');
+            if (needsEscape(string, i)) {
+                if (i > start) {
+                    w.write(string, start, i - start);
                 }
-                w.write(c);
-                break;
-            case '\b':
-                w.write("\\b");
-                break;
-            case '\t':
-                w.write("\\t");
-                break;
-            case '\n':
-                w.write("\\n");
-                break;
-            case '\f':
-                w.write("\\f");
-                break;
-            case '\r':
-                w.write("\\r");
-                break;
-            default:
-                if (c < ' ' || (c >= '\u0080' && c < '\u00a0')
-                        || (c >= '\u2000' && c < '\u2100')) {
-                    w.write("\\u");
-                    hhhh = Integer.toHexString(c);
-                    w.write("0000", 0, 4 - hhhh.length());
-                    w.write(hhhh);
+                c = string.charAt(i);
+                if (c < escapes.length) {
+                    w.write(escapes[c]);
                 } else {
-                    w.write(c);
+                    w.write('\\');
+                    w.write('u');
+                    w.write(hexDigits[c >>> 12]);
+                    w.write(hexDigits[(c >>> 8) & 0xf]);
+                    w.write(hexDigits[(c >>> 4) & 0xf]);
+                    w.write(hexDigits[c & 0xf]);
                 }
+                start = i + 1;
             }
         }
+        if (len > start) {
+            w.write(string, start, len - start);
+        }
         w.write('"');
         return w;
     }
@@ -1272,6 +1314,29 @@ public class JSONObject {
         return this.map.remove(key);
     }
 
+    /**
+     * Set the key cache used by JSONObject.write and JSONWriter.key to reuse
+     * the quoted forms of keys, for example to use a cache of a different
+     * size. The cache is shared by all JSONObjects and JSONWriters.
+     *
+     * @param cache A key cache, or null to stop caching quoted keys.
+     */
+    public static void setKeyCache(KeyCache cache) {
+        keyCache = cache;
+    }
+
+    /**
+     * Set the key pool used by JSONObject.put to share key strings, for
+     * example to use a pool of a different size. The pool is shared by all
+     * JSONObjects.
+     *
+     * @param pool A key pool, or null to stop pooling keys.
+     */
+    public static void setKeyPool(KeyPool pool) {
+        keyPool = pool;
+    }
+
+
     /**
      * Try to convert a string into a number, boolean, or null. If the string
      * can't be converted, return the string.
@@ -1311,11 +1376,11 @@ public class JSONObject {
                         return d;
                     }
                 } else {
-                    Long myLong = new Long(string);
-                    if (myLong.longValue() == myLong.intValue()) {
-                        return new Integer(myLong.intValue());
+                    long myLong = Long.parseLong(string);
+                    if (myLong == (int)myLong) {
+                        return Integer.valueOf((int)myLong);
                     } else {
-                        return myLong;
+                        return Long.valueOf(myLong);
                     }
                 }
             }  catch (Exception ignore) {
@@ -1400,9 +1465,11 @@ public class JSONObject {
      * @throws JSONException If the object contains an invalid number.
      */
     public String toString(int indentFactor) throws JSONException {
-        StringWriter w = new StringWriter();
-        synchronized (w.getBuffer()) {
-            return this.write(w, indentFactor, 0).toString();
+        JSONBuffer buffer = new JSONBuffer();
+        try {
+            return this.write(buffer, indentFactor, 0).toString();
+        } finally {
+            buffer.close();
         }
     }
 
@@ -1498,15 +1565,7 @@ public class JSONObject {
              if (object instanceof Map) {
                  return new JSONObject((Map)object);
              }
-             Package objectPackage = object.getClass().getPackage();
-             String objectPackageName = objectPackage != null
-                 ? objectPackage.getName()
-                 : "";
-             if (
-                 objectPackageName.startsWith("java.") ||
-                 objectPackageName.startsWith("javax.") ||
-                 object.getClass().getClassLoader() == null
-             ) {
+             if (!ClassInfo.forClass(object.getClass()).bean) {
                  return object.toString();
              }
              return new JSONObject(object);
@@ -1516,6 +1575,48 @@ public class JSONObject {
      }
 
 
+    /**
+     * Write the contents of the JSONObject as UTF-8 encoded JSON text to a
+     * stream. For compactness, no whitespace is added. The bytes are encoded
+     * directly, without making a String. The stream is not flushed or closed.
+     * <p>
+     * Warning: This method assumes that the data structure is acyclical.
+     *
+     * @param stream The stream that receives the bytes.
+     * @return The stream.
+     * @throws JSONException
+     */
+    public OutputStream write(OutputStream stream) throws JSONException {
+        return this.write(stream, 0);
+    }
+
+
+    /**
+     * Write the contents of the JSONObject as prettyprinted, UTF-8 encoded JSON
+     * text to a stream. The bytes are encoded directly, without making a
+     * String. The stream is not flushed or closed.
+     * <p>
+     * Warning: This method assumes that the data structure is acyclical.
+     *
+     * @param stream The stream that receives the bytes.
+     * @param indentFactor The number of spaces to add to each level of
+     *  indentation.
+     * @return The stream.
+     * @throws JSONException
+     */
+    public OutputStream write(OutputStream stream, int indentFactor)
+            throws JSONException {
+        UTF8Writer writer = new UTF8Writer(stream);
+        this.write(writer, indentFactor, 0);
+        try {
+            writer.finish();
+        } catch (IOException exception) {
+            throw new JSONException(exception);
+        }
+        return stream;
+    }
+
+
      /**
       * Write the contents of the JSONObject as JSON text to a writer.
       * For compactness, no whitespace is added.
@@ -1545,6 +1646,12 @@ public class JSONObject {
                     indent);
         } else if (value.getClass().isArray()) {
             new JSONArray(value).write(writer, indentFactor, indent);
+        } else if (value instanceof Double) {
+            testValidity(value);
+            writeDouble(writer, ((Double) value).doubleValue());
+        } else if (value instanceof Float) {
+            testValidity(value);
+            writeFloat(writer, ((Float) value).floatValue());
         } else if (value instanceof Number) {
             writer.write(numberToString((Number) value));
         } else if (value instanceof Boolean) {
@@ -1556,13 +1663,67 @@ public class JSONObject {
             } catch (Exception e) {
                 throw new JSONException(e);
             }
-            writer.write(o != null ? o.toString() : quote(value.toString()));
+            if (o != null) {
+                writer.write(o.toString());
+            } else {
+                quote(value.toString(), writer);
+            }
         } else {
             quote(value.toString(), writer);
         }
         return writer;
     }
 
+    /**
+     * Write a key in quotes, using the key cache if there is one.
+     * @param writer The writer.
+     * @param key A key string.
+     * @throws IOException
+     */
+    static final void writeKey(Writer writer, String key) throws IOException {
+        KeyCache cache = keyCache;
+        KeyCache.Quoted quoted = cache != null ? cache.get(key) : null;
+        if (quoted == null) {
+            quote(key, writer);
+        } else if (writer instanceof UTF8Writer && quoted.bytes != null) {
+            ((UTF8Writer)writer).writeUTF8(quoted.bytes);
+        } else {
+            writer.write(quoted.chars, 0, quoted.chars.length);
+        }
+    }
+
+    /**
+     * Write a finite double with the shortest digits that read back as the
+     * same value, without making a String.
+     * @param writer The writer.
+     * @param d A finite double.
+     * @throws IOException
+     */
+    static final void writeDouble(Writer writer, double d) throws IOException {
+        if (writer instanceof JSONBuffer) {
+            ((JSONBuffer)writer).writeDouble(d);
+        } else {
+            char[] chars = new char[DoubleFormatter.maxLength];
+            writer.write(chars, 0, DoubleFormatter.format(d, chars, 0));
+        }
+    }
+
+    /**
+     * Write a finite float with the shortest digits that read back as the
+     * same value, without making a String.
+     * @param writer The writer.
+     * @param f A finite float.
+     * @throws IOException
+     */
+    static final void writeFloat(Writer writer, float f) throws IOException {
+        if (writer instanceof JSONBuffer) {
+            ((JSONBuffer)writer).writeFloat(f);
+        } else {
+            char[] chars = new char[DoubleFormatter.maxLength];
+            writer.write(chars, 0, DoubleFormatter.format(f, chars, 0));
+        }
+    }
+
     static final void indent(Writer writer, int indent) throws IOException {
         for (int i = 0; i < indent; i += 1) {
             writer.write(' ');
@@ -1588,7 +1749,7 @@ public class JSONObject {
 
             if (length == 1) {
                 Object key = keys.next();
-                writer.write(quote(key.toString()));
+                writeKey(writer, key.toString());
                 writer.write(':');
                 if (indentFactor > 0) {
                     writer.write(' ');
@@ -1605,7 +1766,7 @@ public class JSONObject {
                         writer.write('\n');
                     }
                     indent(writer, newindent);
-                    writer.write(quote(key.toString()));
+                    writeKey(writer, key.toString());
                     writer.write(':');
                     if (indentFactor > 0) {
                         writer.write(' ');
@@ -0,0 +1,554 @@
+package org.json;
+
+/*
+Copyright (c) 2013 JSON.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+The Software shall be used for Good, not Evil.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * JSONReader is a pull parser for JSON text, the reading counterpart of
+ * JSONWriter. Instead of building a JSONObject or JSONArray, it reports the
+ * structure of the text one event at a time, so a document of any size can
+ * be walked in constant memory. For example, <pre>
+ * JSONReader reader = new JSONReader(myReader);
+ * while (reader.next() != JSONReader.END_DOCUMENT) {
+ *     if (reader.getEvent() == JSONReader.KEY
+ *             &amp;&amp; "skip".equals(reader.getString())) {
+ *         reader.next();
+ *         reader.skipChildren();
+ *     }
+ * }</pre>
+ * <p>
+ * The <code>next</code> method returns one of <code>START_OBJECT</code>,
+ * <code>END_OBJECT</code>, <code>START_ARRAY</code>, <code>END_ARRAY</code>,
+ * <code>KEY</code>, <code>VALUE_STRING</code>, <code>VALUE_NUMBER</code>,
+ * <code>VALUE_TRUE</code>, <code>VALUE_FALSE</code>, <code>VALUE_NULL</code>,
+ * or <code>END_DOCUMENT</code> once the top level value is complete. The
+ * reader accepts the same forgiving syntax as the JSONObject and JSONArray
+ * constructors. Because nothing is retained, duplicated keys are not
+ * detected. Objects and arrays can be nested up to 200 levels deep.
+ * @author JSON.org
+ * @version 2013-01-24
+ */
+public class JSONReader {
+    private static final int maxdepth = 200;
+
+    /**
+     * The end of the top level value has been reached.
+     */
+    public static final int END_DOCUMENT = 0;
+
+    /**
+     * A <code>{</code>&nbsp;<small>(left brace)</small> was read.
+     */
+    public static final int START_OBJECT = 1;
+
+    /**
+     * A <code>}</code>&nbsp;<small>(right brace)</small> was read.
+     */
+    public static final int END_OBJECT = 2;
+
+    /**
+     * A <code>[</code>&nbsp;<small>(left bracket)</small> was read.
+     */
+    public static final int START_ARRAY = 3;
+
+    /**
+     * A <code>]</code>&nbsp;<small>(right bracket)</small> was read.
+     */
+    public static final int END_ARRAY = 4;
+
+    /**
+     * A key was read. It is available from <code>getString</code>.
+     */
+    public static final int KEY = 5;
+
+    /**
+     * A string value was read. It is available from <code>getString</code>.
+     */
+    public static final int VALUE_STRING = 6;
+
+    /**
+     * A number was read. It is available from <code>getNumber</code>.
+     */
+    public static final int VALUE_NUMBER = 7;
+
+    /**
+     * The value <code>true</code> was read.
+     */
+    public static final int VALUE_TRUE = 8;
+
+    /**
+     * The value <code>false</code> was read.
+     */
+    public static final int VALUE_FALSE = 9;
+
+    /**
+     * The value <code>null</code> was read, or a value was elided from an
+     * array.
+     */
+    public static final int VALUE_NULL = 10;
+
+    /**
+     * The comma flag determines if a separator is expected before the next
+     * member of the current object or array.
+     */
+    private boolean comma;
+
+    /**
+     * The last event returned by <code>next</code>.
+     */
+    private int event;
+
+    /**
+     * The current mode. Values:
+     * 'd' (done),
+     * 'i' (initial),
+     * 'k' (a key has been read, a value must follow),
+     * 'm' (inside an object or array).
+     */
+    private char mode;
+
+    /**
+     * While skipping, strings and other values are checked but not kept.
+     */
+    private boolean skipping;
+
+    /**
+     * The object/array stack. Each entry is 'a' (array) or 'o' (object).
+     */
+    private final char stack[];
+
+    /**
+     * The stack top index. A value of 0 indicates that the stack is empty.
+     */
+    private int top;
+
+    /**
+     * The value of the last KEY or value event.
+     */
+    private Object value;
+
+    /**
+     * The tokener that supplies the text.
+     */
+    private final JSONTokener x;
+
+
+    /**
+     * Make a JSONReader that reads a JSON text from a JSONTokener.
+     * @param x A JSONTokener.
+     */
+    public JSONReader(JSONTokener x) {
+        this.comma = false;
+        this.event = END_DOCUMENT;
+        this.mode = 'i';
+        this.stack = new char[maxdepth];
+        this.top = 0;
+        this.x = x;
+    }
+
+
+    /**
+     * Make a JSONReader that reads a JSON text from a Reader.
+     * @param reader A reader.
+     */
+    public JSONReader(Reader reader) {
+        this(new JSONTokener(reader));
+    }
+
+
+    /**
+     * Make a JSONReader that reads UTF-8 JSON text from an InputStream.
+     * @param inputStream An input stream.
+     */
+    public JSONReader(InputStream inputStream) throws JSONException {
+        this(new JSONTokener(inputStream));
+    }
+
+
+    /**
+     * Make a JSONReader that reads a JSON text from a string.
+     * @param source A source string.
+     */
+    public JSONReader(String source) {
+        this(new JSONTokener(source));
+    }
+
+
+    /**
+     * Get the number of objects and arrays that enclose the current position.
+     * @return The depth, which is 0 at the top level.
+     */
+    public int getDepth() {
+        return this.top;
+    }
+
+
+    /**
+     * Get the event last returned by <code>next</code>.
+     * @return The current event.
+     */
+    public int getEvent() {
+        return this.event;
+    }
+
+
+    /**
+     * Get the numeric value of a <code>VALUE_NUMBER</code> event.
+     * @return An Integer, Long, or Double, or a BigInteger or BigDecimal if
+     *  the tokener reads exact numbers.
+     * @throws JSONException If the current event is not a number.
+     */
+    public Number getNumber() throws JSONException {
+        if (this.event != VALUE_NUMBER) {
+            throw new JSONException("Current event is not a number.");
+        }
+        return (Number)this.value;
+    }
+
+
+    /**
+     * Get the text of a <code>KEY</code> or <code>VALUE_STRING</code> event.
+     * @return A string.
+     * @throws JSONException If the current event is not a key or a string.
+     */
+    public String getString() throws JSONException {
+        if (this.event != KEY && this.event != VALUE_STRING) {
+            throw new JSONException("Current event is not a key or a string.");
+        }
+        return (String)this.value;
+    }
+
+
+    /**
+     * Get the value of the current event. Keys and strings produce a String,
+     * numbers produce an Integer, Long, or Double, <code>true</code> and
+     * <code>false</code> produce a Boolean, and <code>null</code> produces
+     * the JSONObject.NULL object.
+     * @return The value, or null if the current event is not a key or value.
+     */
+    public Object getValue() {
+        return this.value;
+    }
+
+
+    /**
+     * Read the next event.
+     * @return The event.
+     * @throws JSONException If there is a syntax error in the source text.
+     */
+    public int next() throws JSONException {
+        char c;
+        this.value = null;
+        switch (this.mode) {
+        case 'd':
+            this.event = END_DOCUMENT;
+            return this.event;
+        case 'i':
+            this.mode = 'd';
+            return this.readValue(this.x.nextClean());
+        case 'k':
+
+// The key is followed by ':'. We will also tolerate '=' or '=>'.
+
+            c = this.x.nextClean();
+            if (c == '=') {
+                if (this.x.next() != '>') {
+                    this.x.back();
+                }
+            } else if (c != ':') {
+                throw this.x.syntaxError("Expected a ':' after a key");
+            }
+            this.mode = 'm';
+            this.comma = true;
+            return this.readValue(this.x.nextClean());
+        }
+        c = this.x.nextClean();
+        if (this.stack[this.top - 1] == 'o') {
+
+// Pairs are separated by ','. We will also tolerate ';'.
+
+            if (this.comma) {
+                switch (c) {
+                case ';':
+                case ',':
+                    c = this.x.nextClean();
+                    break;
+                case '}':
+                    break;
+                default:
+                    throw this.x.syntaxError("Expected a ',' or '}'");
+                }
+            }
+            switch (c) {
+            case 0:
+                throw this.x.syntaxError("A JSONObject text must end with '}'");
+            case '}':
+                return this.end('o', END_OBJECT);
+            case '"':
+            case '\'':
+                if (this.skipping) {
+                    this.skipString(c);
+                } else {
+                    this.value = this.x.nextString(c);
+                }
+                break;
+            case '{':
+            case '[':
+
+// A key may itself be an object or array. When skipping, it is skipped the
+// way a value is, by a reader of its own.
+
+                this.x.back();
+                if (this.skipping) {
+                    JSONReader key = new JSONReader(this.x);
+                    key.next();
+                    key.skipChildren();
+                } else {
+                    this.value = this.x.nextValue().toString();
+                }
+                break;
+            default:
+                if (this.skipping) {
+                    this.skipUnquoted(c);
+                } else {
+                    this.x.back();
+                    this.value = this.x.nextValue().toString();
+                }
+            }
+            this.mode = 'k';
+            this.event = KEY;
+            return this.event;
+        }
+
+// Values are separated by ','. We will also tolerate ';'. A ',' where a value
+// is expected is an elided value, which is null.
+
+        if (this.comma) {
+            switch (c) {
+            case ';':
+            case ',':
+                c = this.x.nextClean();
+                if (c == ']') {
+                    return this.end('a', END_ARRAY);
+                }
+                break;
+            case ']':
+                return this.end('a', END_ARRAY);
+            default:
+                throw this.x.syntaxError("Expected a ',' or ']'");
+            }
+        } else if (c == ']') {
+            return this.end('a', END_ARRAY);
+        }
+        this.comma = true;
+        if (c == ',') {
+            this.x.back();
+            this.value = JSONObject.NULL;
+            this.event = VALUE_NULL;
+            return this.event;
+        }
+        return this.readValue(c);
+    }
+
+
+    /**
+     * Skip the contents of the object or array that was just started, so
+     * that the next event is the one after its end. If the current event is
+     * not <code>START_OBJECT</code> or <code>START_ARRAY</code>, nothing is
+     * skipped. The skipped text is checked for syntax errors, but its keys
+     * and values are not kept.
+     * @return The number of members of the skipped object or elements of the
+     *  skipped array.
+     * @throws JSONException If there is a syntax error in the skipped text.
+     */
+    public int skipChildren() throws JSONException {
+        if (this.event != START_OBJECT && this.event != START_ARRAY) {
+            return 0;
+        }
+        int count = 0;
+        int depth = this.top;
+        int counted = this.event == START_OBJECT ? KEY : -1;
+        this.skipping = true;
+        try {
+            while (this.top >= depth) {
+                boolean member = this.top == depth && this.mode != 'k';
+                int e = this.next();
+                if (member && (e == counted ||
+                        (counted < 0 && e != END_ARRAY))) {
+                    count += 1;
+                }
+            }
+        } finally {
+            this.skipping = false;
+        }
+        return count;
+    }
+
+
+    /**
+     * End an object or array.
+     * @param m The scope being closed, 'a' or 'o'.
+     * @param e The event to report.
+     * @return The event.
+     */
+    private int end(char m, int e) {
+        this.top -= 1;
+        this.comma = true;
+        this.mode = this.top == 0 ? 'd' : 'm';
+        this.event = e;
+        return e;
+    }
+
+
+    /**
+     * Push an array or object scope.
+     * @param m The scope to open, 'a' or 'o'.
+     * @throws JSONException If nesting is too deep.
+     */
+    private void push(char m) throws JSONException {
+        if (this.top >= maxdepth) {
+            throw this.x.syntaxError("Nesting too deep");
+        }
+        this.stack[this.top] = m;
+        this.top += 1;
+        this.comma = false;
+        this.mode = 'm';
+    }
+
+
+    /**
+     * Read a value that begins with the given character.
+     * @param c The first character of the value.
+     * @return The event.
+     * @throws JSONException If there is a syntax error.
+     */
+    private int readValue(char c) throws JSONException {
+        switch (c) {
+        case '{':
+            this.push('o');
+            this.event = START_OBJECT;
+            return this.event;
+        case '[':
+            this.push('a');
+            this.event = START_ARRAY;
+            return this.event;
+        case '"':
+        case '\'':
+            if (this.skipping) {
+                this.skipString(c);
+            } else {
+                this.value = this.x.nextString(c);
+            }
+            this.event = VALUE_STRING;
+            return this.event;
+        }
+        if (this.skipping) {
+            this.skipUnquoted(c);
+            this.event = VALUE_STRING;
+            return this.event;
+        }
+        this.x.back();
+        this.value = this.x.nextValue();
+        if (this.value instanceof Number) {
+            this.event = VALUE_NUMBER;
+        } else if (this.value == Boolean.TRUE) {
+            this.event = VALUE_TRUE;
+        } else if (this.value == Boolean.FALSE) {
+            this.event = VALUE_FALSE;
+        } else if (this.value == JSONObject.NULL) {
+            this.event = VALUE_NULL;
+        } else {
+            this.event = VALUE_STRING;
+        }
+        return this.event;
+    }
+
+
+    /**
+     * Skip the characters up to the next close quote character, checking
+     * the backslash sequences as <code>JSONTokener.nextString</code> does.
+     * @param quote The quoting character.
+     * @throws JSONException Unterminated string or illegal escape.
+     */
+    private void skipString(char quote) throws JSONException {
+        for (;;) {
+            char c = this.x.next();
+            switch (c) {
+            case 0:
+            case '\n':
+            case '\r':
+                throw this.x.syntaxError("Unterminated string");
+            case '\\':
+                c = this.x.next();
+                switch (c) {
+                case 'b':
+                case 't':
+                case 'n':
+                case 'f':
+                case 'r':
+                case '"':
+                case '\'':
+                case '\\':
+                case '/':
+                    break;
+                case 'u':
+                    for (int i = 0; i < 4; i += 1) {
+                        if (JSONTokener.dehexchar(this.x.next()) < 0) {
+                            throw this.x.syntaxError("Illegal escape.");
+                        }
+                    }
+                    break;
+                default:
+                    throw this.x.syntaxError("Illegal escape.");
+                }
+                break;
+            default:
+                if (c == quote) {
+                    return;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Skip unquoted text, such as a number, <code>true</code>, or an unquoted
+     * string, as <code>JSONTokener.nextValue</code> would read it.
+     * @param c The first character of the text.
+     * @throws JSONException If there is no text.
+     */
+    private void skipUnquoted(char c) throws JSONException {
+        if (c < ' ' || ",:]}/\\\"[{;=#".indexOf(c) >= 0) {
+            this.x.back();
+            throw this.x.syntaxError("Missing value");
+        }
+        do {
+            c = this.x.next();
+        } while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0);
+        this.x.back();
+    }
+}
@@ -24,8 +24,6 @@ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
 SOFTWARE.
 */
 
-import java.io.StringWriter;
-
 /**
  * JSONStringer provides a quick and convenient way of producing JSON text.
  * The texts produced strictly conform to JSON syntax rules. No whitespace is
@@ -48,7 +46,8 @@ import java.io.StringWriter;
  *     .toString();</pre> which produces the string <pre>
  * {"JSON":"Hello, World!"}</pre>
  * <p>
- * The first method called must be <code>array</code> or <code>object</code>.
+ * The first method called must be <code>array</code>, <code>object</code>, or
+ * <code>bean</code>.
  * There are no methods for adding commas or colons. JSONStringer adds them for
  * you. Objects and arrays can be nested up to 20 levels deep.
  * <p>
@@ -58,10 +57,17 @@ import java.io.StringWriter;
  */
 public class JSONStringer extends JSONWriter {
     /**
-     * Make a fresh JSONStringer. It can be used to build one JSON text.
+     * The JSON text, once it has been taken from the buffer.
+     */
+    private String text;
+
+    /**
+     * Make a fresh JSONStringer. It can be used to build one JSON text. The
+     * text is built in the thread's spare JSONBuffer array, which is given
+     * back when the text is taken by <code>toString</code>.
      */
     public JSONStringer() {
-        super(new StringWriter());
+        super(new JSONBuffer());
     }
 
     /**
@@ -73,6 +79,13 @@ public class JSONStringer extends JSONWriter {
      * @return The JSON text.
      */
     public String toString() {
-        return this.mode == 'd' ? this.writer.toString() : null;
+        if (this.mode != 'd') {
+            return null;
+        }
+        if (this.text == null) {
+            this.text = this.writer.toString();
+            ((JSONBuffer)this.writer).close();
+        }
+        return this.text;
     }
 }
@@ -0,0 +1,738 @@
+package org.json;
+
+/*
+Copyright (c) 2013 JSON.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+The Software shall be used for Good, not Evil.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * JSONTape makes JSONObjects and JSONArrays from JSON text lazily. The text
+ * is scanned once, and the positions of its values are recorded on a tape of
+ * ints. Nothing is decoded until it is used: a JSONObject made from the tape
+ * finds a key by comparing it with the text, and decodes only the value that
+ * was asked for. Nested objects are themselves lazy. An object decodes all
+ * of its keys, and the values at its own level, only when it is changed,
+ * iterated, measured, or written. A JSONArray is made when it is first used,
+ * with lazy objects as its elements.
+ * <p>
+ * The objects behave as if they were made by
+ * <code>new JSONObject(source)</code> and
+ * <code>new JSONArray(source)</code>, with these differences: the whole text
+ * is kept in memory as long as any of its objects are, and a lazy object is
+ * changed by reading it, so it must not be read by several threads at once. Syntax errors are found by the scan, and are reported
+ * exactly as the eager constructors report them.
+ * <p>
+ * The tape holds a record for each value. A string, or unquoted text such as
+ * a number, has two ints: the positions of its first character and of the
+ * character after it. An object or array has three: the position of its
+ * brace or bracket, the position on the tape after its last member, and the
+ * number of its members. Its members follow it; an object's members are
+ * pairs of records for the key and the value. A missing element of an array
+ * is a record that begins and ends at the comma.
+ * @author JSON.org
+ * @version 2013-01-24
+ */
+public class JSONTape {
+
+    /**
+     * The characters that end unquoted text, as in JSONTokener.nextValue.
+     */
+    private static final boolean[] stops = new boolean[128];
+
+    static {
+        String delimiters = ",:]}/\\\"[{;=#";
+        for (int i = 0; i < delimiters.length(); i += 1) {
+            stops[delimiters.charAt(i)] = true;
+        }
+    }
+
+    /**
+     * The text.
+     */
+    private final char[] chars;
+
+    /**
+     * The number of characters in the text.
+     */
+    private final int end;
+
+    /**
+     * A hash table of the keys of the object being checked by distinct, and
+     * the hashes of those keys. A slot holds a key's position on the tape
+     * plus one, or 0 if it is empty.
+     */
+    private int[] hashes;
+    private int[] keys;
+
+    /**
+     * The number of ints used on the tape.
+     */
+    private int size;
+
+    /**
+     * The records of the values.
+     */
+    private int[] tape;
+
+
+    /**
+     * Make a tape for a text. It is empty until the text is scanned.
+     * @param source A JSON text.
+     */
+    private JSONTape(String source) {
+        this.chars = source.toCharArray();
+        this.end = this.chars.length;
+        this.tape = new int[Math.max(16, this.end / 4)];
+    }
+
+
+    /**
+     * Record a value.
+     * @param start The position of its first character.
+     * @param end The position after it.
+     */
+    private void add(int start, int end) {
+        if (this.size + 2 > this.tape.length) {
+            this.grow();
+        }
+        this.tape[this.size] = start;
+        this.tape[this.size + 1] = end;
+        this.size += 2;
+    }
+
+
+    /**
+     * Scan an array, recording it and its elements.
+     * @param i The position of the '['.
+     * @return The position after the ']', or -1 if there is an error.
+     */
+    private int array(int i) {
+        int record = this.begin(i);
+        int count = 0;
+        i = this.clean(i + 1);
+        if (this.charAt(i) == ']') {
+            return this.finish(record, count, i);
+        }
+        for (;;) {
+            i = this.clean(i);
+            if (this.charAt(i) == ',') {
+                this.add(i, i);
+            } else {
+                i = this.value(i);
+                if (i < 0) {
+                    return -1;
+                }
+            }
+            count += 1;
+            i = this.clean(i);
+            switch (this.charAt(i)) {
+            case ';':
+            case ',':
+                i = this.clean(i + 1);
+                if (this.charAt(i) == ']') {
+                    return this.finish(record, count, i);
+                }
+                break;
+            case ']':
+                return this.finish(record, count, i);
+            default:
+                return -1;
+            }
+        }
+    }
+
+
+    /**
+     * Begin the record of an object or an array.
+     * @param i The position of its brace or bracket.
+     * @return The position of the record on the tape.
+     */
+    private int begin(int i) {
+        if (this.size + 3 > this.tape.length) {
+            this.grow();
+        }
+        int record = this.size;
+        this.tape[record] = i;
+        this.size += 3;
+        return record;
+    }
+
+
+    /**
+     * Get a character of the text. As in JSONTokener, the end of the text is
+     * 0.
+     * @param i A position.
+     * @return The character, or 0.
+     */
+    private char charAt(int i) {
+        return i < this.end ? this.chars[i] : 0;
+    }
+
+
+    /**
+     * Skip whitespace, as JSONTokener.nextClean does.
+     * @param i A position.
+     * @return The position of the next character that is not whitespace.
+     */
+    private int clean(int i) {
+        while (i < this.end && this.chars[i] != 0 && this.chars[i] <= ' ') {
+            i += 1;
+        }
+        return i;
+    }
+
+
+    /**
+     * Decode a value.
+     * @param p The position of its record.
+     * @return A String, Boolean, Number, JSONObject, JSONArray, or the
+     * JSONObject.NULL object.
+     */
+    private Object decode(int p) {
+        int start = this.tape[p];
+        int end = this.tape[p + 1];
+        char c = this.chars[start];
+        if (c == '{') {
+            return new JSONObject(this, p);
+        }
+        if (c == '[') {
+            JSONArray ja = new JSONArray();
+            int q = p + 3;
+            for (int n = this.tape[p + 2]; n > 0; n -= 1) {
+                ja.put(this.decode(q));
+                q = this.skip(q);
+            }
+            return ja;
+        }
+        if (start == end) {
+            return JSONObject.NULL;
+        }
+        if ((c == '"' || c == '\'') && !this.escaped(start + 1, end - 1)) {
+            return new String(this.chars, start + 1, end - start - 2);
+        }
+
+// The scan has checked the value, so the tokener cannot fail.
+
+        try {
+            return new JSONTokener(this.chars, start, end - start).nextValue();
+        } catch (JSONException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+
+    /**
+     * Determine if the keys of an object are all different. The JSONObject
+     * constructor fails on a key that appears twice, so the scan must too.
+     * @param record The position of the object's record.
+     * @return true if no key appears twice.
+     */
+    private boolean distinct(int record) {
+        int count = this.tape[record + 2];
+        if (count < 2) {
+            return true;
+        }
+        int length = Integer.highestOneBit(count) * 4;
+        if (this.keys == null || this.keys.length < length) {
+            this.keys = new int[length];
+            this.hashes = new int[length];
+        } else {
+            Arrays.fill(this.keys, 0, length, 0);
+        }
+        int mask = length - 1;
+        int p = record + 3;
+        for (int n = 0; n < count; n += 1) {
+            int hash = this.hash(p);
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (this.keys[slot] != 0) {
+                if (this.hashes[slot] == hash &&
+                        this.matches(p, this.decode(this.keys[slot] - 1)
+                        .toString())) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            this.keys[slot] = p + 1;
+            this.hashes[slot] = hash;
+            p = this.skip(this.skip(p));
+        }
+        return true;
+    }
+
+
+    /**
+     * Determine if a string contains a backslash.
+     * @param start The position after the open quote.
+     * @param end The position of the close quote.
+     * @return true if there is a backslash.
+     */
+    private boolean escaped(int start, int end) {
+        for (int i = start; i < end; i += 1) {
+            if (this.chars[i] == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Finish the record of an object or an array.
+     * @param record The position of the record on the tape.
+     * @param count The number of members.
+     * @param i The position of the closing brace or bracket.
+     * @return The position after it.
+     */
+    private int finish(int record, int count, int i) {
+        this.tape[record + 1] = this.size;
+        this.tape[record + 2] = count;
+        return i + 1;
+    }
+
+
+    /**
+     * Finish the record of an object, checking that no key appears twice.
+     * @param record The position of the record on the tape.
+     * @param count The number of members.
+     * @param i The position of the closing brace.
+     * @return The position after it, or -1 if a key appears twice.
+     */
+    private int finishObject(int record, int count, int i) {
+        i = this.finish(record, count, i);
+        return this.distinct(record) ? i : -1;
+    }
+
+
+    /**
+     * Double the length of the tape.
+     */
+    private void grow() {
+        int[] grown = new int[this.tape.length * 2];
+        System.arraycopy(this.tape, 0, grown, 0, this.size);
+        this.tape = grown;
+    }
+
+
+    /**
+     * Get the hash code of the string a key's text decodes to, without
+     * decoding it if it is a quoted string with no escapes.
+     * @param p The position of the key's record.
+     * @return The hash code.
+     */
+    private int hash(int p) {
+        int start = this.tape[p];
+        int end = this.tape[p + 1];
+        char c = this.chars[start];
+        if ((c == '"' || c == '\'') && !this.escaped(start + 1, end - 1)) {
+            int hash = 0;
+            for (int i = start + 1; i < end - 1; i += 1) {
+                hash = 31 * hash + this.chars[i];
+            }
+            return hash;
+        }
+        return this.decode(p).toString().hashCode();
+    }
+
+
+    /**
+     * Make the map of a lazy JSONObject.
+     * @param p The position of the object's record.
+     * @return The map.
+     */
+    JSONMap map(int p) {
+        return new LazyMap(p);
+    }
+
+
+    /**
+     * Determine if a key's text decodes to a key.
+     * @param p The position of the key's record.
+     * @param key A key.
+     * @return true if they are equal.
+     */
+    private boolean matches(int p, String key) {
+        int start = this.tape[p];
+        int end = this.tape[p + 1];
+        char c = this.chars[start];
+        if (c == '"' || c == '\'') {
+            int length = end - start - 2;
+            if (length == key.length()) {
+
+// A string with an escape is shorter than its text, so an escape here means
+// that the strings differ.
+
+                for (int i = 0; i < length; i += 1) {
+                    char k = this.chars[start + 1 + i];
+                    if (k != key.charAt(i) || k == '\\') {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (length < key.length() || !this.escaped(start + 1, end - 1)) {
+                return false;
+            }
+        }
+        return this.decode(p).toString().equals(key);
+    }
+
+
+    /**
+     * Scan an object, recording it and its members.
+     * @param i The position of the '{'.
+     * @return The position after the '}', or -1 if there is an error.
+     */
+    private int object(int i) {
+        int record = this.begin(i);
+        int count = 0;
+        i += 1;
+        for (;;) {
+            i = this.clean(i);
+            switch (this.charAt(i)) {
+            case 0:
+                return -1;
+            case '}':
+                return this.finishObject(record, count, i);
+            default:
+                i = this.value(i);
+                if (i < 0) {
+                    return -1;
+                }
+            }
+
+// The key is followed by ':'. We will also tolerate '=' or '=>'.
+
+            i = this.clean(i);
+            char c = this.charAt(i);
+            if (c == '=') {
+                i += 1;
+                if (this.charAt(i) == '>') {
+                    i += 1;
+                }
+            } else if (c == ':') {
+                i += 1;
+            } else {
+                return -1;
+            }
+            i = this.value(i);
+            if (i < 0) {
+                return -1;
+            }
+            count += 1;
+
+// Pairs are separated by ','. We will also tolerate ';'.
+
+            i = this.clean(i);
+            switch (this.charAt(i)) {
+            case ';':
+            case ',':
+                i = this.clean(i + 1);
+                if (this.charAt(i) == '}') {
+                    return this.finishObject(record, count, i);
+                }
+                break;
+            case '}':
+                return this.finishObject(record, count, i);
+            default:
+                return -1;
+            }
+        }
+    }
+
+
+    /**
+     * Get the position on the tape after a record and its members.
+     * @param p The position of a record.
+     * @return The position of the next record.
+     */
+    private int skip(int p) {
+        char c = this.chars[this.tape[p]];
+        return c == '{' || c == '['
+            ? this.tape[p + 1]
+            : p + 2;
+    }
+
+
+    /**
+     * Scan a string.
+     * @param i The position after the open quote.
+     * @param quote The quote character.
+     * @return The position after the close quote, or -1 if the string is
+     * unterminated or has an escape that the tokener would not accept.
+     */
+    private int string(int i, char quote) {
+        for (;;) {
+            char c = this.charAt(i);
+            switch (c) {
+            case 0:
+            case '\n':
+            case '\r':
+                return -1;
+            case '\\':
+                switch (this.charAt(i + 1)) {
+                case 'b':
+                case 't':
+                case 'n':
+                case 'f':
+                case 'r':
+                case '"':
+                case '\'':
+                case '\\':
+                case '/':
+                    i += 2;
+                    break;
+                case 'u':
+                    for (int j = i + 2; j < i + 6; j += 1) {
+                        if (Character.digit(this.charAt(j), 16) < 0) {
+                            return -1;
+                        }
+                    }
+                    i += 6;
+                    break;
+                default:
+                    return -1;
+                }
+                break;
+            default:
+                i += 1;
+                if (c == quote) {
+                    return i;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Make a JSONArray from a source JSON text, decoding it as it is used.
+     * @param source A string that begins with
+     * <code>[</code>&nbsp;<small>(left bracket)</small>
+     *  and ends with <code>]</code>&nbsp;<small>(right bracket)</small>.
+     * @return A JSONArray whose objects are lazy.
+     * @throws JSONException If there is a syntax error.
+     */
+    public static JSONArray toJSONArray(String source) throws JSONException {
+        JSONTape tape = new JSONTape(source);
+        int i = tape.clean(0);
+        if (tape.charAt(i) != '[' || tape.array(i) < 0) {
+            return new JSONArray(source);
+        }
+        return (JSONArray)tape.decode(0);
+    }
+
+
+    /**
+     * Make a JSONObject from a source JSON text, decoding it as it is used.
+     * @param source A string beginning
+     *  with <code>{</code>&nbsp;<small>(left brace)</small> and ending
+     *  with <code>}</code>&nbsp;<small>(right brace)</small>.
+     * @return A lazy JSONObject.
+     * @throws JSONException If there is a syntax error.
+     */
+    public static JSONObject toJSONObject(String source) throws JSONException {
+        JSONTape tape = new JSONTape(source);
+        int i = tape.clean(0);
+        if (tape.charAt(i) != '{' || tape.object(i) < 0) {
+            return new JSONObject(source);
+        }
+        return new JSONObject(tape, 0);
+    }
+
+
+    /**
+     * Scan a value, as JSONTokener.nextValue would read it.
+     * @param i A position at or before the value.
+     * @return The position after the value, or -1 if there is an error.
+     */
+    private int value(int i) {
+        i = this.clean(i);
+        char c = this.charAt(i);
+        switch (c) {
+        case '"':
+        case '\'':
+            int j = this.string(i + 1, c);
+            if (j < 0) {
+                return -1;
+            }
+            this.add(i, j);
+            return j;
+        case '{':
+            return this.object(i);
+        case '[':
+            return this.array(i);
+        }
+
+// Unquoted text runs to a formatting character, and trailing whitespace is
+// trimmed from it.
+
+        int j = i;
+        while (j < this.end) {
+            c = this.chars[j];
+            if (c < ' ' || (c < 128 && stops[c])) {
+                break;
+            }
+            j += 1;
+        }
+        int k = j;
+        while (k > i && this.chars[k - 1] <= ' ') {
+            k -= 1;
+        }
+        if (k == i) {
+            return -1;
+        }
+        this.add(i, k);
+        return j;
+    }
+
+
+    /**
+     * A LazyMap is the map of a lazy JSONObject. It answers get and
+     * containsKey from the tape, decoding only the values that are asked for
+     * and keeping them. Anything else loads the whole map first.
+     */
+    private final class LazyMap extends JSONMap {
+
+        /**
+         * The values decoded by get, by member number, or null.
+         */
+        private Object[] decoded;
+
+        /**
+         * True once the map has been loaded.
+         */
+        private boolean loaded;
+
+        /**
+         * The position of the object's record.
+         */
+        private final int record;
+
+        LazyMap(int record) {
+            this.record = record;
+        }
+
+        public void clear() {
+            this.loaded = true;
+            this.decoded = null;
+            super.clear();
+        }
+
+        public boolean containsKey(Object key) {
+            if (this.loaded) {
+                return super.containsKey(key);
+            }
+            if (key instanceof String) {
+                int p = this.record + 3;
+                for (int n = JSONTape.this.tape[this.record + 2]; n > 0;
+                        n -= 1) {
+                    if (JSONTape.this.matches(p, (String)key)) {
+                        return true;
+                    }
+                    p = JSONTape.this.skip(JSONTape.this.skip(p));
+                }
+            }
+            return false;
+        }
+
+        public Set entrySet() {
+            this.load();
+            return super.entrySet();
+        }
+
+        public Object get(Object key) {
+            if (this.loaded) {
+                return super.get(key);
+            }
+            if (!(key instanceof String)) {
+                return null;
+            }
+            int p = this.record + 3;
+            int count = JSONTape.this.tape[this.record + 2];
+            for (int n = 0; n < count; n += 1) {
+                if (JSONTape.this.matches(p, (String)key)) {
+                    if (this.decoded == null) {
+                        this.decoded = new Object[count];
+                    }
+                    Object value = this.decoded[n];
+                    if (value == null) {
+                        value = JSONTape.this.decode(JSONTape.this.skip(p));
+                        this.decoded[n] = value;
+                    }
+                    return value;
+                }
+                p = JSONTape.this.skip(JSONTape.this.skip(p));
+            }
+            return null;
+        }
+
+        public Set keySet() {
+            this.load();
+            return super.keySet();
+        }
+
+        /**
+         * Put the keys and values in the map, in the order of the text,
+         * keeping the values already decoded. The scan has made sure that
+         * no key appears twice.
+         */
+        private void load() {
+            if (this.loaded) {
+                return;
+            }
+            this.loaded = true;
+            KeyPool pool = JSONObject.getKeyPool();
+            int p = this.record + 3;
+            int count = JSONTape.this.tape[this.record + 2];
+            for (int n = 0; n < count; n += 1) {
+                String key = JSONTape.this.decode(p).toString();
+                int q = JSONTape.this.skip(p);
+                Object value = this.decoded != null
+                    ? this.decoded[n]
+                    : null;
+                if (value == null) {
+                    value = JSONTape.this.decode(q);
+                }
+                super.put(pool != null ? pool.intern(key) : key, value);
+                p = JSONTape.this.skip(q);
+            }
+            this.decoded = null;
+        }
+
+        public Object put(Object key, Object value) {
+            this.load();
+            return super.put(key, value);
+        }
+
+        public Object remove(Object key) {
+            this.load();
+            return super.remove(key);
+        }
+
+        public int size() {
+            this.load();
+            return super.size();
+        }
+    }
+}
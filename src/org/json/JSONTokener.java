@@ -3,9 +3,9 @@ package org.json;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 
 /*
 Copyright (c) 2002 JSON.org
@@ -40,13 +40,30 @@ SOFTWARE.
  */
 public class JSONTokener {
 
-    private long    character;
-    private boolean eof;
-    private long    index;
-    private long    line;
-    private char    previous;
-    private Reader  reader;
-    private boolean usePrevious;
+    /**
+     * The powers of ten that are exactly representable as doubles.
+     */
+    private static final double powersOfTen[] = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private char[]      buffer;
+    private byte[]      bytes;
+    private long        character;
+    private boolean     eof;
+    private boolean     exactNumbers;
+    private long        index;
+    private int         limit;
+    private long        line;
+    private int         mark;
+    private int         position;
+    private char        previous;
+    private Reader      reader;
+    private InputStream stream;
+    private char        surrogate;
+    private char[]      text = new char[32];
+    private boolean     usePrevious;
 
 
     /**
@@ -68,20 +85,110 @@ public class JSONTokener {
 
 
     /**
-     * Construct a JSONTokener from an InputStream.
+     * Construct a JSONTokener from an InputStream. The stream is read as
+     * UTF-8 bytes, which are decoded by the tokener itself rather than by an
+     * InputStreamReader.
+     *
+     * @param inputStream     An input stream of UTF-8 text.
      */
     public JSONTokener(InputStream inputStream) throws JSONException {
-        this(new InputStreamReader(inputStream));
+        this(new byte[8192], 0, 0);
+        this.stream = inputStream;
+        this.skipByteOrderMark();
+    }
+
+
+    /**
+     * Construct a JSONTokener from an array of UTF-8 bytes. Bytes are decoded
+     * as they are read, and malformed sequences are reported as syntax errors.
+     * The array is not copied, so it should not be modified while the tokener
+     * is in use.
+     *
+     * @param bytes     The UTF-8 source bytes.
+     */
+    public JSONTokener(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+
+    /**
+     * Construct a JSONTokener from a range of an array of UTF-8 bytes. A
+     * byte order mark is skipped if the range starts at the beginning of the
+     * array, as it is for the whole array; a range that starts further in is
+     * taken to be part of a larger text, and is read as it is.
+     *
+     * @param bytes     The UTF-8 source bytes.
+     * @param offset    The index of the first byte to read.
+     * @param length    The number of bytes to read.
+     */
+    public JSONTokener(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.bytes = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+        this.mark = -1;
+        this.eof = false;
+        this.usePrevious = false;
+        this.previous = 0;
+        this.index = 0;
+        this.character = 1;
+        this.line = 1;
+        if (offset == 0 && length >= 3 &&
+                bytes[0] == (byte)0xEF &&
+                bytes[1] == (byte)0xBB &&
+                bytes[2] == (byte)0xBF) {
+            this.position = 3;
+        }
     }
 
 
     /**
-     * Construct a JSONTokener from a string.
+     * Construct a JSONTokener from a string. The characters are read directly
+     * from an array, without going through a Reader.
      *
      * @param s     A source string.
      */
     public JSONTokener(String s) {
-        this(new StringReader(s));
+        this(s.toCharArray());
+    }
+
+
+    /**
+     * Construct a JSONTokener from an array of characters. The array is not
+     * copied, so it should not be modified while the tokener is in use.
+     *
+     * @param chars     The source characters.
+     */
+    public JSONTokener(char[] chars) {
+        this(chars, 0, chars.length);
+    }
+
+
+    /**
+     * Construct a JSONTokener from a range of an array of characters. The
+     * array is not copied, so it should not be modified while the tokener is
+     * in use.
+     *
+     * @param chars     The source characters.
+     * @param offset    The index of the first character to read.
+     * @param length    The number of characters to read.
+     */
+    public JSONTokener(char[] chars, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > chars.length - length) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.buffer = chars;
+        this.position = offset;
+        this.limit = offset + length;
+        this.mark = -1;
+        this.eof = false;
+        this.usePrevious = false;
+        this.previous = 0;
+        this.index = 0;
+        this.character = 1;
+        this.line = 1;
     }
 
 
@@ -150,6 +257,24 @@ public class JSONTokener {
         if (this.usePrevious) {
             this.usePrevious = false;
             c = this.previous;
+        } else if (this.buffer != null) {
+            c = this.position < this.limit ? this.buffer[this.position++] : 0;
+            if (c == 0) { // End of array
+                this.eof = true;
+            }
+        } else if (this.bytes != null) {
+            if (this.surrogate != 0) {
+                c = this.surrogate;
+                this.surrogate = 0;
+            } else if (this.position < this.limit &&
+                    this.bytes[this.position] >= 0) {
+                c = this.bytes[this.position++];
+            } else {
+                c = this.nextUTF8();
+            }
+            if (c == 0) { // End of bytes
+                this.eof = true;
+            }
         } else {
             try {
                 c = this.reader.read();
@@ -177,6 +302,135 @@ public class JSONTokener {
     }
 
 
+    /**
+     * Get the next byte, refilling the byte buffer from the stream if there
+     * is one.
+     *
+     * @return The next byte as an int between 0 and 255, or -1 at the end.
+     */
+    private int nextByte() throws JSONException {
+        if (this.position >= this.limit && !this.fill()) {
+            return -1;
+        }
+        return this.bytes[this.position++] & 0xFF;
+    }
+
+
+    /**
+     * Decode the next character from the UTF-8 bytes. Characters outside of
+     * the Basic Multilingual Plane are returned as a surrogate pair, the low
+     * surrogate being held for the following call.
+     *
+     * @return The next character, or 0 at the end of the bytes.
+     * @throws JSONException If the bytes are not well-formed UTF-8.
+     */
+    private int nextUTF8() throws JSONException {
+        int b = this.nextByte();
+        if (b < 0x80) {
+            return b < 0 ? 0 : b;
+        }
+        int c;
+        int minimum;
+        int more;
+        if ((b & 0xE0) == 0xC0) {
+            c = b & 0x1F;
+            minimum = 0x80;
+            more = 1;
+        } else if ((b & 0xF0) == 0xE0) {
+            c = b & 0x0F;
+            minimum = 0x800;
+            more = 2;
+        } else if ((b & 0xF8) == 0xF0) {
+            c = b & 0x07;
+            minimum = 0x10000;
+            more = 3;
+        } else {
+            throw this.syntaxError("Illegal UTF-8 byte " + b);
+        }
+        while (more > 0) {
+            b = this.nextByte();
+            if ((b & 0xC0) != 0x80) {
+                throw this.syntaxError("Truncated UTF-8 sequence");
+            }
+            c = (c << 6) | (b & 0x3F);
+            more -= 1;
+        }
+        if (c < minimum || c > 0x10FFFF || (c >= 0xD800 && c <= 0xDFFF)) {
+            throw this.syntaxError("Illegal UTF-8 sequence");
+        }
+        if (c >= 0x10000) {
+            c -= 0x10000;
+            this.surrogate = (char)(0xDC00 + (c & 0x3FF));
+            return 0xD800 + (c >>> 10);
+        }
+        return c;
+    }
+
+
+    /**
+     * Read more bytes from the stream into the byte buffer. Bytes before the
+     * current position are discarded unless skipTo has marked them.
+     *
+     * @return true if at least one byte was read.
+     */
+    private boolean fill() throws JSONException {
+        if (this.stream == null) {
+            return false;
+        }
+        int keep = this.mark >= 0 ? this.mark : this.position;
+        if (keep > 0) {
+            System.arraycopy(this.bytes, keep, this.bytes, 0, this.limit - keep);
+            this.limit -= keep;
+            this.position -= keep;
+            if (this.mark >= 0) {
+                this.mark = 0;
+            }
+        }
+        if (this.limit == this.bytes.length) {
+            byte[] grown = new byte[this.bytes.length * 2];
+            System.arraycopy(this.bytes, 0, grown, 0, this.limit);
+            this.bytes = grown;
+        }
+        int n;
+        try {
+            do {
+                n = this.stream.read(this.bytes, this.limit,
+                        this.bytes.length - this.limit);
+            } while (n == 0);
+        } catch (IOException exception) {
+            throw new JSONException(exception);
+        }
+        if (n < 0) {
+            return false;
+        }
+        this.limit += n;
+        return true;
+    }
+
+
+    /**
+     * Skip a UTF-8 byte order mark at the start of the bytes, if present.
+     */
+    private void skipByteOrderMark() throws JSONException {
+        int start = this.position;
+        while (this.limit - this.position < 3 && this.stream != null) {
+            this.mark = start;
+            boolean filled = this.fill();
+            start = this.mark;
+            this.mark = -1;
+            if (!filled) {
+                break;
+            }
+        }
+        if (this.limit - start >= 3 &&
+                this.bytes[start] == (byte)0xEF &&
+                this.bytes[start + 1] == (byte)0xBB &&
+                this.bytes[start + 2] == (byte)0xBF) {
+            this.position = start + 3;
+        }
+    }
+
+
     /**
      * Consume the next character, and check that it matches a specified
      * character.
@@ -223,36 +477,17 @@ public class JSONTokener {
 
 
     /**
-     * Get the next char in the string, skipping whitespace.
-     * @throws JSONException
-     * @return  A character, or 0 if there are no more characters.
-     */
-    public char nextClean() throws JSONException {
-        for (;;) {
-            char c = this.next();
-            if (c == 0 || c > ' ') {
-                return c;
-            }
-        }
-    }
-
-
-    /**
-     * Return the characters up to the next close quote character.
-     * Backslash processing is done. The formal JSON format does not
-     * allow strings in single quotes, but an implementation is allowed to
-     * accept them.
-     * @param quote The quoting character, either
-     *      <code>"</code>&nbsp;<small>(double quote)</small> or
-     *      <code>'</code>&nbsp;<small>(single quote)</small>.
-     * @return      A String.
+     * Get the characters up to the next close quote character, as nextString
+     * does, but leave them in the text buffer instead of making a String.
+     * @param quote The quoting character.
+     * @return The number of characters in the text buffer.
      * @throws JSONException Unterminated string.
      */
-    public String nextString(char quote) throws JSONException {
-        char c;
-        StringBuffer sb = new StringBuffer();
+    int nextChars(char quote) throws JSONException {
+        char[] chars = this.text;
+        int length = 0;
         for (;;) {
-            c = this.next();
+            char c = this.next();
             switch (c) {
             case 0:
             case '\n':
@@ -262,28 +497,27 @@ public class JSONTokener {
                 c = this.next();
                 switch (c) {
                 case 'b':
-                    sb.append('\b');
+                    c = '\b';
                     break;
                 case 't':
-                    sb.append('\t');
+                    c = '\t';
                     break;
                 case 'n':
-                    sb.append('\n');
+                    c = '\n';
                     break;
                 case 'f':
-                    sb.append('\f');
+                    c = '\f';
                     break;
                 case 'r':
-                    sb.append('\r');
+                    c = '\r';
                     break;
                 case 'u':
-                    sb.append((char)Integer.parseInt(this.next(4), 16));
+                    c = (char)Integer.parseInt(this.next(4), 16);
                     break;
                 case '"':
                 case '\'':
                 case '\\':
                 case '/':
-                    sb.append(c);
                     break;
                 default:
                     throw this.syntaxError("Illegal escape.");
@@ -291,14 +525,50 @@ public class JSONTokener {
                 break;
             default:
                 if (c == quote) {
-                    return sb.toString();
+                    return length;
                 }
-                sb.append(c);
             }
+            if (length == chars.length) {
+                chars = this.grow();
+            }
+            chars[length] = c;
+            length += 1;
         }
     }
 
 
+    /**
+     * Get the next char in the string, skipping whitespace.
+     * @throws JSONException
+     * @return  A character, or 0 if there are no more characters.
+     */
+    public char nextClean() throws JSONException {
+        for (;;) {
+            char c = this.next();
+            if (c == 0 || c > ' ') {
+                return c;
+            }
+        }
+    }
+
+
+    /**
+     * Return the characters up to the next close quote character.
+     * Backslash processing is done. The formal JSON format does not
+     * allow strings in single quotes, but an implementation is allowed to
+     * accept them.
+     * @param quote The quoting character, either
+     *      <code>"</code>&nbsp;<small>(double quote)</small> or
+     *      <code>'</code>&nbsp;<small>(single quote)</small>.
+     * @return      A String.
+     * @throws JSONException Unterminated string.
+     */
+    public String nextString(char quote) throws JSONException {
+        int length = this.nextChars(quote);
+        return new String(this.text, 0, length);
+    }
+
+
     /**
      * Get the text up but not including the specified character or the
      * end of line, whichever comes first.
@@ -346,13 +616,13 @@ public class JSONTokener {
     /**
      * Get the next value. The value can be a Boolean, Double, Integer,
      * JSONArray, JSONObject, Long, or String, or the JSONObject.NULL object.
+     * If exact numbers are on, it can also be a BigDecimal or BigInteger.
      * @throws JSONException If syntax error.
      *
      * @return An object.
      */
     public Object nextValue() throws JSONException {
         char c = this.nextClean();
-        String string;
 
         switch (c) {
             case '"':
@@ -372,21 +642,282 @@ public class JSONTokener {
          * is allowed to also accept non-standard forms.
          *
          * Accumulate characters until we reach the end of the text or a
-         * formatting character.
+         * formatting character. The characters are kept in a buffer that is
+         * reused, so that numbers and the reserved words can be converted
+         * without making a String.
          */
 
-        StringBuffer sb = new StringBuffer();
+        return this.unquotedValue(this.nextUnquoted(c));
+    }
+
+
+    /**
+     * Accumulate unquoted text into the text buffer, stopping at the end of
+     * the text or at a formatting character, which is backed up over.
+     * Trailing whitespace is trimmed.
+     * @param c The first character of the text, which is not whitespace.
+     * @return The number of characters in the text buffer.
+     * @throws JSONException If there is no text.
+     */
+    int nextUnquoted(char c) throws JSONException {
+        char[] chars = this.text;
+        int length = 0;
         while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
-            sb.append(c);
+            if (length == chars.length) {
+                chars = this.grow();
+            }
+            chars[length] = c;
+            length += 1;
             c = this.next();
         }
         this.back();
-
-        string = sb.toString().trim();
-        if ("".equals(string)) {
+        while (length > 0 && chars[length - 1] <= ' ') {
+            length -= 1;
+        }
+        if (length == 0) {
             throw this.syntaxError("Missing value");
         }
-        return JSONObject.stringToValue(string);
+        return length;
+    }
+
+
+    /**
+     * Double the size of the text buffer, keeping its contents.
+     * @return The new text buffer.
+     */
+    private char[] grow() {
+        char[] grown = new char[this.text.length * 2];
+        System.arraycopy(this.text, 0, grown, 0, this.text.length);
+        this.text = grown;
+        return grown;
+    }
+
+
+    /**
+     * Determine if a range of characters is equal to a word, ignoring case
+     * as String.equalsIgnoreCase does.
+     * @param chars The characters.
+     * @param start The index of the first character.
+     * @param end The index after the last character.
+     * @param word A word in lower case.
+     * @return true if the characters match the word.
+     */
+    private static boolean matches(char[] chars, int start, int end,
+            String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < end - start; i += 1) {
+            char c = chars[start + i];
+            char w = word.charAt(i);
+            if (c != w && Character.toLowerCase(c) != w &&
+                    Character.toUpperCase(c) != Character.toUpperCase(w)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Convert characters that have the strict form of a number to a double,
+     * if that can be done exactly with a single multiplication or division,
+     * as in scanNumber.
+     * @param chars The characters.
+     * @param end The index after the last character.
+     * @return The double, or NaN if the characters must be converted some
+     * other way.
+     */
+    private static double scanDouble(char[] chars, int end) {
+        boolean negative = chars[0] == '-';
+        int i = negative ? 1 : 0;
+        long mantissa = 0;
+        int digits = 0;
+        int significant = 0;
+        int exponent = 0;
+        boolean decimal = false;
+        for (;;) {
+            while (i < end && chars[i] >= '0' && chars[i] <= '9') {
+                mantissa = mantissa * 10 + (chars[i] - '0');
+                if (mantissa != 0) {
+                    significant += 1;
+                    if (significant > 15) {
+                        return Double.NaN;
+                    }
+                }
+                if (decimal) {
+                    exponent -= 1;
+                }
+                digits += 1;
+                i += 1;
+            }
+            if (decimal || i == end || chars[i] != '.') {
+                break;
+            }
+            decimal = true;
+            i += 1;
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (i < end && (chars[i] == 'e' || chars[i] == 'E')) {
+            i += 1;
+            boolean negativeExponent = false;
+            if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+                negativeExponent = chars[i] == '-';
+                i += 1;
+            }
+            if (i == end) {
+                return Double.NaN;
+            }
+            int e = 0;
+            while (i < end && chars[i] >= '0' && chars[i] <= '9') {
+                if (e < 10000) {
+                    e = e * 10 + (chars[i] - '0');
+                }
+                i += 1;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != end || exponent < -22 || exponent > 22) {
+            return Double.NaN;
+        }
+        double d = exponent < 0
+            ? (double)mantissa / powersOfTen[-exponent]
+            : (double)mantissa * powersOfTen[exponent];
+        return negative ? -d : d;
+    }
+
+
+    /**
+     * Convert a range of characters that has the strict form of a number
+     * directly to an Integer, Long, or Double, without making a String. This
+     * produces the same values as JSONObject.stringToValue. Integers that do
+     * not fit in a long, decimals with more than 15 significant digits or
+     * large exponents, and forms such as <code>0x10</code> or
+     * <code>1.5f</code> are not converted here; for them null is returned, so
+     * that JSONObject.stringToValue can decide.
+     * <p>
+     * If exact is true, integers that do not fit in a long become BigIntegers
+     * and all decimals become BigDecimals.
+     * @param chars The characters.
+     * @param start The index of the first character.
+     * @param end The index after the last character.
+     * @param exact true if numbers must be kept exactly.
+     * @return A Number, or null.
+     */
+    private static Number scanNumber(char[] chars, int start, int end,
+            boolean exact) {
+        int i = start;
+        char c = chars[i];
+        boolean negative = c == '-';
+        if (negative || c == '+') {
+            i += 1;
+        }
+        long mantissa = 0;
+        boolean overflow = false;
+        int digits = 0;
+        int significant = 0;
+        int exponent = 0;
+        boolean decimal = false;
+        for (;;) {
+            while (i < end && (c = chars[i]) >= '0' && c <= '9') {
+                if (overflow ||
+                        mantissa > (Long.MAX_VALUE - (c - '0')) / 10) {
+                    overflow = true;
+                } else {
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                if (mantissa != 0) {
+                    significant += 1;
+                }
+                if (decimal) {
+                    exponent -= 1;
+                }
+                digits += 1;
+                i += 1;
+            }
+            if (decimal || i == end || c != '.') {
+                break;
+            }
+            decimal = true;
+            i += 1;
+        }
+        if (digits == 0) {
+            return null;
+        }
+        if (i < end && (c == 'e' || c == 'E')) {
+            decimal = true;
+            i += 1;
+            boolean negativeExponent = false;
+            if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+                negativeExponent = chars[i] == '-';
+                i += 1;
+            }
+            if (i == end) {
+                return null;
+            }
+            int e = 0;
+            while (i < end && (c = chars[i]) >= '0' && c <= '9') {
+                if (e < 10000) {
+                    e = e * 10 + (c - '0');
+                }
+                i += 1;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != end) {
+            return null;
+        }
+        if (exact && (overflow || decimal)) {
+            try {
+                return decimal
+                    ? (Number)new BigDecimal(chars, start, end - start)
+                    : (Number)new BigInteger(
+                        new String(chars, start, end - start));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (overflow) {
+            return null;
+        }
+        if (!decimal) {
+            long l = negative ? -mantissa : mantissa;
+            return l == (int)l
+                ? (Number)Integer.valueOf((int)l)
+                : (Number)Long.valueOf(l);
+        }
+
+// A mantissa of up to 15 digits and a power of ten of up to 22 are both exact
+// doubles, so a single multiplication or division gives the correctly rounded
+// result. Anything else is left to Double.valueOf.
+
+        double d;
+        if (mantissa == 0) {
+            d = 0;
+        } else if (significant > 15 || exponent < -22 || exponent > 22) {
+            return null;
+        } else if (exponent < 0) {
+            d = (double)mantissa / powersOfTen[-exponent];
+        } else {
+            d = (double)mantissa * powersOfTen[exponent];
+        }
+        return Double.valueOf(negative ? -d : d);
+    }
+
+
+    /**
+     * Choose how numbers with fractions or exponents, and integers too large
+     * for a long, are read by <code>nextValue</code>. By default they become
+     * Doubles, which may lose precision, or Strings if they do not fit. When
+     * exact numbers are on, they become BigDecimals and BigIntegers instead,
+     * which JSONObject and JSONArray write back out unchanged. Integers that
+     * fit in a long are read as Integers and Longs either way.
+     * @param exactNumbers true to read numbers exactly.
+     */
+    public void setExactNumbers(boolean exactNumbers) {
+        this.exactNumbers = exactNumbers;
     }
 
 
@@ -399,6 +930,33 @@ public class JSONTokener {
      */
     public char skipTo(char to) throws JSONException {
         char c;
+        if (this.reader == null) {
+            long startIndex = this.index;
+            long startCharacter = this.character;
+            long startLine = this.line;
+            char startPrevious = this.previous;
+            char startSurrogate = this.surrogate;
+            boolean startUsePrevious = this.usePrevious;
+            this.mark = this.position;
+            do {
+                c = this.next();
+                if (c == 0) {
+                    this.position = this.mark;
+                    this.mark = -1;
+                    this.index = startIndex;
+                    this.character = startCharacter;
+                    this.line = startLine;
+                    this.previous = startPrevious;
+                    this.surrogate = startSurrogate;
+                    this.usePrevious = startUsePrevious;
+                    this.eof = false;
+                    return c;
+                }
+            } while (c != to);
+            this.mark = -1;
+            this.back();
+            return c;
+        }
         try {
             long startIndex = this.index;
             long startCharacter = this.character;
@@ -443,4 +1001,105 @@ public class JSONTokener {
         return " at " + this.index + " [character " + this.character + " line " +
             this.line + "]";
     }
+
+
+    /**
+     * Get the text buffer, which holds the characters left by nextChars and
+     * nextUnquoted.
+     * @return The text buffer.
+     */
+    char[] text() {
+        return this.text;
+    }
+
+
+    /**
+     * Convert the unquoted text in the text buffer to a double, as
+     * JSONObject.getDouble would convert the value that nextValue makes of it,
+     * but without boxing it.
+     * @param length The number of characters in the text buffer.
+     * @return The number.
+     * @throws JSONException If the text is not a number.
+     */
+    double unquotedDouble(int length) throws JSONException {
+        double d = scanDouble(this.text, length);
+        if (d == d) {
+            return d;
+        }
+        Object value = this.unquotedValue(length);
+        if (value instanceof Number) {
+            return ((Number)value).doubleValue();
+        }
+        throw this.syntaxError("Expected a number");
+    }
+
+
+    /**
+     * Convert the unquoted text in the text buffer to a long, as
+     * JSONObject.getLong would convert the value that nextValue makes of it,
+     * but without boxing it.
+     * @param length The number of characters in the text buffer.
+     * @return The number.
+     * @throws JSONException If the text is not a number.
+     */
+    long unquotedLong(int length) throws JSONException {
+        char[] chars = this.text;
+        boolean negative = chars[0] == '-';
+        int i = negative ? 1 : 0;
+        if (i < length && length - i <= 18) {
+            long l = 0;
+            while (i < length && chars[i] >= '0' && chars[i] <= '9') {
+                l = l * 10 + (chars[i] - '0');
+                i += 1;
+            }
+            if (i == length) {
+                return negative ? -l : l;
+            }
+        }
+        Object value = this.unquotedValue(length);
+        if (value instanceof Number) {
+            return ((Number)value).longValue();
+        }
+        throw this.syntaxError("Expected a number");
+    }
+
+
+    /**
+     * Convert the unquoted text in the text buffer to a value. This could be
+     * true, false, null, a number, or a string.
+     * @param length The number of characters in the text buffer.
+     * @return A Boolean, Number, String, or the JSONObject.NULL object.
+     */
+    Object unquotedValue(int length) {
+        return unquotedValue(this.text, length, this.exactNumbers);
+    }
+
+
+    /**
+     * Convert unquoted text to a value, as nextValue would.
+     * @param chars The text, which is not empty and has no whitespace at
+     * either end.
+     * @param length The number of characters of text.
+     * @param exact true if numbers must be kept exactly.
+     * @return A Boolean, Number, String, or the JSONObject.NULL object.
+     */
+    static Object unquotedValue(char[] chars, int length, boolean exact) {
+        if (matches(chars, 0, length, "true")) {
+            return Boolean.TRUE;
+        }
+        if (matches(chars, 0, length, "false")) {
+            return Boolean.FALSE;
+        }
+        if (matches(chars, 0, length, "null")) {
+            return JSONObject.NULL;
+        }
+        char c = chars[0];
+        if ((c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+') {
+            Number number = scanNumber(chars, 0, length, exact);
+            if (number != null) {
+                return number;
+            }
+        }
+        return JSONObject.stringToValue(new String(chars, 0, length));
+    }
 }
@@ -1,6 +1,7 @@
 package org.json;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 
 /*
@@ -48,7 +49,8 @@ SOFTWARE.
  *     .endObject();</pre> which writes <pre>
  * {"JSON":"Hello, World!"}</pre>
  * <p>
- * The first method called must be <code>array</code> or <code>object</code>.
+ * The first method called must be <code>array</code>, <code>object</code>, or
+ * <code>bean</code>.
  * There are no methods for adding commas or colons. JSONWriter adds them for
  * you. Objects and arrays can be nested up to 20 levels deep.
  * <p>
@@ -85,6 +87,11 @@ public class JSONWriter {
      */
     private int top;
 
+    /**
+     * The UTF-8 encoder, if the output goes to an OutputStream, or null.
+     */
+    private final UTF8Writer utf8;
+
     /**
      * The writer that will receive the output.
      */
@@ -98,9 +105,27 @@ public class JSONWriter {
         this.mode = 'i';
         this.stack = new JSONObject[maxdepth];
         this.top = 0;
+        this.utf8 = null;
         this.writer = w;
     }
 
+    /**
+     * Make a fresh JSONWriter that encodes its text as UTF-8 bytes directly,
+     * without making Strings. It can be used to build one JSON text. The
+     * bytes are buffered, and all of them have been written to the stream
+     * when the outermost array or object is ended. The stream is not flushed
+     * or closed.
+     * @param stream The stream that receives the bytes.
+     */
+    public JSONWriter(OutputStream stream) {
+        this.comma = false;
+        this.mode = 'i';
+        this.stack = new JSONObject[maxdepth];
+        this.top = 0;
+        this.utf8 = new UTF8Writer(stream);
+        this.writer = this.utf8;
+    }
+
     /**
      * Append a value.
      * @param string A string value.
@@ -111,22 +136,13 @@ public class JSONWriter {
         if (string == null) {
             throw new JSONException("Null pointer");
         }
-        if (this.mode == 'o' || this.mode == 'a') {
-            try {
-                if (this.comma && this.mode == 'a') {
-                    this.writer.write(',');
-                }
-                this.writer.write(string);
-            } catch (IOException e) {
-                throw new JSONException(e);
-            }
-            if (this.mode == 'o') {
-                this.mode = 'k';
-            }
-            this.comma = true;
-            return this;
+        this.beginValue();
+        try {
+            this.writer.write(string);
+        } catch (IOException e) {
+            throw new JSONException(e);
         }
-        throw new JSONException("Value out of sequence.");
+        return this.endValue();
     }
 
     /**
@@ -148,6 +164,62 @@ public class JSONWriter {
         throw new JSONException("Misplaced array.");
     }
 
+    /**
+     * Append a bean as an object value, or write it as the whole text if
+     * nothing has been written yet. Its properties are the same as those
+     * of <code>new JSONObject(bean)</code>, and nested beans, collections,
+     * maps, and arrays are written as JSONObject.wrap would represent them,
+     * but the text is written directly from the getters, without making any
+     * JSONObjects or JSONArrays. The getters of each class are found once and
+     * kept.
+     * <p>
+     * Warning: This method assumes that the data structure is acyclical.
+     * @param bean An object that has getter methods.
+     * @return this
+     * @throws JSONException If the value is out of sequence, or if a
+     *  property is a non-finite number.
+     */
+    public JSONWriter bean(Object bean) throws JSONException {
+        if (bean == null) {
+            throw new JSONException("Null pointer");
+        }
+        boolean outermost = this.mode == 'i';
+        if (!outermost) {
+            this.beginValue();
+        }
+        try {
+            ClassInfo.forClass(bean.getClass()).write(this.writer, bean);
+            if (outermost && this.utf8 != null) {
+                this.utf8.finish();
+            }
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        if (outermost) {
+            this.mode = 'd';
+            return this;
+        }
+        return this.endValue();
+    }
+
+    /**
+     * Begin a value, writing the comma that separates it from the previous
+     * value if it is in an array.
+     * @throws JSONException If the value is out of sequence.
+     */
+    private void beginValue() throws JSONException {
+        if (this.mode != 'o' && this.mode != 'a') {
+            throw new JSONException("Value out of sequence.");
+        }
+        if (this.comma && this.mode == 'a') {
+            try {
+                this.writer.write(',');
+            } catch (IOException e) {
+                throw new JSONException(e);
+            }
+        }
+    }
+
     /**
      * End something.
      * @param mode Mode
@@ -164,6 +236,9 @@ public class JSONWriter {
         this.pop(mode);
         try {
             this.writer.write(c);
+            if (this.mode == 'd' && this.utf8 != null) {
+                this.utf8.finish();
+            }
         } catch (IOException e) {
             throw new JSONException(e);
         }
@@ -171,6 +246,18 @@ public class JSONWriter {
         return this;
     }
 
+    /**
+     * Finish a value that was begun by beginValue.
+     * @return this
+     */
+    private JSONWriter endValue() {
+        if (this.mode == 'o') {
+            this.mode = 'k';
+        }
+        this.comma = true;
+        return this;
+    }
+
     /**
      * End an array. This method most be called to balance calls to
      * <code>array</code>.
@@ -209,7 +296,7 @@ public class JSONWriter {
                 if (this.comma) {
                     this.writer.write(',');
                 }
-                this.writer.write(JSONObject.quote(string));
+                JSONObject.writeKey(this.writer, string);
                 this.writer.write(':');
                 this.comma = false;
                 this.mode = 'o';
@@ -300,7 +387,16 @@ public class JSONWriter {
      * @throws JSONException If the number is not finite.
      */
     public JSONWriter value(double d) throws JSONException {
-        return this.value(new Double(d));
+        if (Double.isInfinite(d) || Double.isNaN(d)) {
+            JSONObject.testValidity(new Double(d));
+        }
+        this.beginValue();
+        try {
+            JSONObject.writeDouble(this.writer, d);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        return this.endValue();
     }
 
     /**
@@ -0,0 +1,225 @@
+package org.json;
+
+/*
+Copyright (c) 2013 JSON.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+The Software shall be used for Good, not Evil.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A KeyCache holds the quoted, escaped form of recently written keys, as
+ * characters and as UTF-8 bytes, so that a key that is written over and over
+ * is escaped and encoded only once. JSONObject.write and JSONWriter.key (and
+ * so JSONStringer) use it.
+ * <p>
+ * The cache is a direct-mapped table: each key can only be kept in the slot
+ * chosen by its hash code. A key is only added on its second sighting in a
+ * row for its slot, when it replaces the key in the slot; the first time, only
+ * its hash code is remembered, and the key is quoted as if there were no
+ * cache. So keys that are written once, such as keys taken from user input,
+ * cost no more than without the cache and do not push out the keys that are
+ * written over and over. A lookup takes no lock. The entries are immutable, so a racing replacement
+ * only costs a miss. Keys longer than <code>maxKeyLength</code> are not
+ * cached. The hit and miss counters are not synchronized, so under heavy
+ * concurrent use they may undercount slightly.
+ * @author JSON.org
+ * @version 2013-01-24
+ */
+public class KeyCache {
+
+    /**
+     * The default number of slots.
+     */
+    public static final int defaultCapacity = 1024;
+
+    /**
+     * The longest key that is cached.
+     */
+    public static final int maxKeyLength = 64;
+
+    /**
+     * The number of lookups that found their key.
+     */
+    private long hits;
+
+    /**
+     * The number of lookups that did not find their key.
+     */
+    private long misses;
+
+    /**
+     * The slots. The length is a power of two.
+     */
+    private final Quoted table[];
+
+    /**
+     * The hash code of the last key that was looked up and not found in each
+     * slot, parallel to table.
+     */
+    private final int seen[];
+
+
+    /**
+     * Make a KeyCache with <code>defaultCapacity</code> slots.
+     */
+    public KeyCache() {
+        this(defaultCapacity);
+    }
+
+
+    /**
+     * Make a KeyCache.
+     * @param capacity The maximum number of keys in the cache. It is rounded
+     *  up to a power of two.
+     */
+    public KeyCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        int length = 1;
+        while (length < capacity) {
+            length <<= 1;
+        }
+        this.table = new Quoted[length];
+        this.seen = new int[length];
+    }
+
+
+    /**
+     * Get the maximum number of keys in the cache.
+     * @return The capacity.
+     */
+    public int capacity() {
+        return this.table.length;
+    }
+
+
+    /**
+     * Remove all of the keys from the cache and reset the counters.
+     */
+    public void clear() {
+        for (int i = 0; i < this.table.length; i += 1) {
+            this.table[i] = null;
+            this.seen[i] = 0;
+        }
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+
+    /**
+     * Get the quoted form of a key. A key that is not in the cache is added
+     * if it was also the last key looked up and not found in its slot.
+     * @param key A key string.
+     * @return The quoted key, or null if the key is too long to cache or
+     *  has not been seen before.
+     */
+    Quoted get(String key) {
+        if (key.length() > maxKeyLength) {
+            return null;
+        }
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        int i = h & (this.table.length - 1);
+        Quoted quoted = this.table[i];
+        if (quoted != null && (quoted.key == key || quoted.key.equals(key))) {
+            this.hits += 1;
+            return quoted;
+        }
+        this.misses += 1;
+        if (this.seen[i] != h) {
+            this.seen[i] = h;
+            return null;
+        }
+        quoted = new Quoted(key);
+        this.table[i] = quoted;
+        return quoted;
+    }
+
+
+    /**
+     * Get the number of times a key was found in the cache.
+     * @return The number of hits.
+     */
+    public long hits() {
+        return this.hits;
+    }
+
+
+    /**
+     * Get the number of times a key was not found in the cache.
+     * @return The number of misses.
+     */
+    public long misses() {
+        return this.misses;
+    }
+
+
+    /**
+     * Get the number of keys in the cache.
+     * @return The size.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < this.table.length; i += 1) {
+            if (this.table[i] != null) {
+                size += 1;
+            }
+        }
+        return size;
+    }
+
+
+    /**
+     * Make a printable string of the cache's counters.
+     * @return "KeyCache[size=..., capacity=..., hits=..., misses=...]"
+     */
+    public String toString() {
+        return "KeyCache[size=" + this.size() + ", capacity=" +
+            this.capacity() + ", hits=" + this.hits() + ", misses=" +
+            this.misses() + "]";
+    }
+
+
+    /**
+     * A key and its quoted form, as produced by JSONObject.quote.
+     */
+    static final class Quoted {
+        final byte[] bytes;
+        final char[] chars;
+        final String key;
+
+        Quoted(String key) {
+            String quoted = JSONObject.quote(key);
+            byte[] bytes;
+            try {
+                bytes = quoted.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException ignore) {
+                bytes = null;
+            }
+            this.bytes = bytes;
+            this.chars = quoted.toCharArray();
+            this.key = key;
+        }
+    }
+}
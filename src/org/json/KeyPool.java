@@ -0,0 +1,247 @@
+package org.json;
+
+/*
+Copyright (c) 2013 JSON.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+The Software shall be used for Good, not Evil.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.util.HashMap;
+
+/**
+ * A KeyPool is a thread-safe, bounded pool of key strings. It is like string
+ * interning, but without permanently tying up memory: once the pool is full,
+ * keys that have not been used recently are evicted. JSONObject.put uses a
+ * KeyPool so that the many JSONObjects parsed from texts with the same shape
+ * share their key strings.
+ * <p>
+ * The pool is divided into segments that are locked separately. Each segment
+ * evicts with the CLOCK algorithm, an approximation of least recently used:
+ * a key that is found in the pool is marked as referenced, and the clock hand
+ * passes over referenced keys once, clearing the mark, before it evicts them.
+ * The pool counts hits and misses so that its size can be tuned.
+ * @author JSON.org
+ * @version 2013-01-24
+ */
+public class KeyPool {
+
+    /**
+     * The default maximum number of keys in a pool.
+     */
+    public static final int defaultCapacity = 1024;
+
+    /**
+     * The number of separately locked segments.
+     */
+    private static final int segmentCount = 16;
+
+    /**
+     * The segments. A key's segment is chosen by its hash code.
+     */
+    private final Segment segments[];
+
+
+    /**
+     * Make a KeyPool holding up to <code>defaultCapacity</code> keys.
+     */
+    public KeyPool() {
+        this(defaultCapacity);
+    }
+
+
+    /**
+     * Make a KeyPool.
+     * @param capacity The maximum number of keys in the pool.
+     */
+    public KeyPool(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        int count = Math.min(segmentCount, capacity);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i += 1) {
+            this.segments[i] = new Segment(
+                    capacity / count + (i < capacity % count ? 1 : 0));
+        }
+    }
+
+
+    /**
+     * Get the maximum number of keys in the pool.
+     * @return The capacity.
+     */
+    public int capacity() {
+        int capacity = 0;
+        for (int i = 0; i < this.segments.length; i += 1) {
+            capacity += this.segments[i].keys.length;
+        }
+        return capacity;
+    }
+
+
+    /**
+     * Remove all of the keys from the pool and reset the counters.
+     */
+    public void clear() {
+        for (int i = 0; i < this.segments.length; i += 1) {
+            this.segments[i].clear();
+        }
+    }
+
+
+    /**
+     * Get the number of times <code>intern</code> found a key in the pool.
+     * @return The number of hits.
+     */
+    public long hits() {
+        long hits = 0;
+        for (int i = 0; i < this.segments.length; i += 1) {
+            Segment segment = this.segments[i];
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+
+    /**
+     * Get a pooled key string that is equal to the given key. If there is no
+     * such string in the pool, the key is added to the pool and returned.
+     * @param key A key string.
+     * @return A string equal to the key.
+     */
+    public String intern(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return this.segments[(h & 0x7FFFFFFF) % this.segments.length]
+            .intern(key);
+    }
+
+
+    /**
+     * Get the number of times <code>intern</code> did not find a key in the
+     * pool.
+     * @return The number of misses.
+     */
+    public long misses() {
+        long misses = 0;
+        for (int i = 0; i < this.segments.length; i += 1) {
+            Segment segment = this.segments[i];
+            synchronized (segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+
+    /**
+     * Get the number of keys in the pool.
+     * @return The size.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < this.segments.length; i += 1) {
+            Segment segment = this.segments[i];
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+
+    /**
+     * Make a printable string of the pool's counters.
+     * @return "KeyPool[size=..., capacity=..., hits=..., misses=...]"
+     */
+    public String toString() {
+        return "KeyPool[size=" + this.size() + ", capacity=" + this.capacity() +
+            ", hits=" + this.hits() + ", misses=" + this.misses() + "]";
+    }
+
+
+    /**
+     * A segment holds its keys in a ring swept by the clock hand, and a map
+     * from each key to its position in the ring.
+     */
+    private static final class Segment {
+        private int hand;
+        private long hits;
+        private final String keys[];
+        private HashMap map;
+        private long misses;
+        private final boolean referenced[];
+        private int size;
+
+        Segment(int capacity) {
+            this.keys = new String[capacity];
+            this.referenced = new boolean[capacity];
+            this.map = new HashMap(capacity * 4 / 3 + 1);
+        }
+
+        synchronized void clear() {
+            this.hand = 0;
+            this.hits = 0;
+            this.map = new HashMap(this.keys.length * 4 / 3 + 1);
+            this.misses = 0;
+            this.size = 0;
+            for (int i = 0; i < this.keys.length; i += 1) {
+                this.keys[i] = null;
+                this.referenced[i] = false;
+            }
+        }
+
+        synchronized String intern(String key) {
+            Integer slot = (Integer)this.map.get(key);
+            if (slot != null) {
+                int i = slot.intValue();
+                this.hits += 1;
+                this.referenced[i] = true;
+                return this.keys[i];
+            }
+            this.misses += 1;
+            int i;
+            if (this.size < this.keys.length) {
+                i = this.size;
+                this.size += 1;
+            } else {
+
+// Advance the hand past referenced keys, giving each a second chance, and
+// evict the first key that has not been referenced since the last sweep.
+
+                while (this.referenced[this.hand]) {
+                    this.referenced[this.hand] = false;
+                    this.hand = (this.hand + 1) % this.keys.length;
+                }
+                i = this.hand;
+                this.hand = (this.hand + 1) % this.keys.length;
+                this.map.remove(this.keys[i]);
+            }
+            this.keys[i] = key;
+            this.referenced[i] = false;
+            this.map.put(key, Integer.valueOf(i));
+            return key;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.json;
+
+/*
+Copyright (c) 2013 JSON.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+The Software shall be used for Good, not Evil.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A UTF8Writer encodes characters as UTF-8 straight into a byte array, and
+ * writes the array to an OutputStream whenever it fills. It does no locking
+ * and does not go through a CharsetEncoder. An unpaired surrogate is written
+ * as <code>?</code>, as String.getBytes does.
+ * <p>
+ * Like JSONBuffer, each thread keeps one spare byte array, which a new
+ * UTF8Writer takes and finish() gives back.
+ * @author JSON.org
+ * @version 2013-01-24
+ */
+final class UTF8Writer extends Writer {
+
+    /**
+     * The size of the byte array.
+     */
+    private static final int bufferSize = 8192;
+
+    /**
+     * Each thread's spare byte array, or null if it is in use or there is
+     * none.
+     */
+    private static final ThreadLocal spare = new ThreadLocal();
+
+    /**
+     * The encoded bytes that have not been written to the stream yet. It is
+     * null after finish.
+     */
+    private byte[] bytes;
+
+    /**
+     * The number of bytes in the array.
+     */
+    private int length;
+
+    /**
+     * The stream that receives the bytes.
+     */
+    private final OutputStream stream;
+
+    /**
+     * A high surrogate that is waiting for its low surrogate, or 0.
+     */
+    private char surrogate;
+
+
+    /**
+     * Make a UTF8Writer, taking the thread's spare byte array if there is
+     * one.
+     * @param stream The stream that receives the bytes.
+     */
+    UTF8Writer(OutputStream stream) {
+        byte[] bytes = (byte[])spare.get();
+        if (bytes == null) {
+            bytes = new byte[bufferSize];
+        } else {
+            spare.set(null);
+        }
+        this.bytes = bytes;
+        this.stream = stream;
+    }
+
+
+    /**
+     * Write the remaining bytes and close the stream.
+     */
+    public void close() throws IOException {
+        if (this.bytes != null) {
+            this.finish();
+        }
+        this.stream.close();
+    }
+
+
+    /**
+     * Write the bytes in the array to the stream and empty the array.
+     */
+    private void drain() throws IOException {
+        if (this.length > 0) {
+            this.stream.write(this.bytes, 0, this.length);
+            this.length = 0;
+        }
+    }
+
+
+    /**
+     * Encode one character. There must be room for four bytes.
+     * @param c A character.
+     */
+    private void encode(char c) {
+        byte[] b = this.bytes;
+        int i = this.length;
+        if (this.surrogate != 0) {
+            char high = this.surrogate;
+            this.surrogate = 0;
+            if (c >= '\uDC00' && c <= '\uDFFF') {
+                int codePoint = Character.toCodePoint(high, c);
+                b[i] = (byte)(0xF0 | (codePoint >>> 18));
+                b[i + 1] = (byte)(0x80 | ((codePoint >>> 12) & 0x3F));
+                b[i + 2] = (byte)(0x80 | ((codePoint >>> 6) & 0x3F));
+                b[i + 3] = (byte)(0x80 | (codePoint & 0x3F));
+                this.length = i + 4;
+                return;
+            }
+            b[i] = '?';
+            i += 1;
+        }
+        if (c < 0x80) {
+            b[i] = (byte)c;
+            i += 1;
+        } else if (c < 0x800) {
+            b[i] = (byte)(0xC0 | (c >>> 6));
+            b[i + 1] = (byte)(0x80 | (c & 0x3F));
+            i += 2;
+        } else if (c >= '\uD800' && c <= '\uDBFF') {
+            this.surrogate = c;
+        } else if (c >= '\uDC00' && c <= '\uDFFF') {
+            b[i] = '?';
+            i += 1;
+        } else {
+            b[i] = (byte)(0xE0 | (c >>> 12));
+            b[i + 1] = (byte)(0x80 | ((c >>> 6) & 0x3F));
+            b[i + 2] = (byte)(0x80 | (c & 0x3F));
+            i += 3;
+        }
+        this.length = i;
+    }
+
+
+    /**
+     * Write the remaining bytes to the stream, without flushing or closing
+     * it, and give the byte array back to the thread. The writer must not be
+     * used after it is finished.
+     */
+    void finish() throws IOException {
+        if (this.surrogate != 0) {
+            this.surrogate = 0;
+            this.write('?');
+        }
+        this.drain();
+        spare.set(this.bytes);
+        this.bytes = null;
+    }
+
+
+    /**
+     * Write the bytes in the array to the stream and flush the stream.
+     */
+    public void flush() throws IOException {
+        this.drain();
+        this.stream.flush();
+    }
+
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int end = off + len;
+        for (int i = off; i < end; i += 1) {
+            char c = cbuf[i];
+            if (this.length + 4 > this.bytes.length) {
+                this.drain();
+            }
+            if (c < 0x80 && this.surrogate == 0) {
+                this.bytes[this.length] = (byte)c;
+                this.length += 1;
+            } else {
+                this.encode(c);
+            }
+        }
+    }
+
+
+    public void write(int c) throws IOException {
+        if (this.length + 4 > this.bytes.length) {
+            this.drain();
+        }
+        this.encode((char)c);
+    }
+
+
+    public void write(String str) throws IOException {
+        this.write(str, 0, str.length());
+    }
+
+
+    public void write(String str, int off, int len) throws IOException {
+        int end = off + len;
+        for (int i = off; i < end; i += 1) {
+            char c = str.charAt(i);
+            if (this.length + 4 > this.bytes.length) {
+                this.drain();
+            }
+            if (c < 0x80 && this.surrogate == 0) {
+                this.bytes[this.length] = (byte)c;
+                this.length += 1;
+            } else {
+                this.encode(c);
+            }
+        }
+    }
+
+
+    /**
+     * Write bytes that are already UTF-8 encoded.
+     * @param utf8 The bytes.
+     */
+    void writeUTF8(byte[] utf8) throws IOException {
+        if (this.surrogate != 0) {
+            this.surrogate = 0;
+            this.write('?');
+        }
+        if (this.length + utf8.length > this.bytes.length) {
+            this.drain();
+            if (utf8.length > this.bytes.length) {
+                this.stream.write(utf8);
+                return;
+            }
+        }
+        System.arraycopy(utf8, 0, this.bytes, this.length, utf8.length);
+        this.length += utf8.length;
+    }
+}